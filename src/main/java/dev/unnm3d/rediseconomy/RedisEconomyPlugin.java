@@ -105,6 +105,10 @@ public final class RedisEconomyPlugin extends JavaPlugin {
         loadPlayerList();
 
         this.currenciesManager = new CurrenciesManager(redisManager, this, configManager);
+        redisManager.loadScripts().exceptionally(throwable -> {
+            getLogger().warning("Failed to preload the Redis scripts, they will be sent on their first call: " + throwable.getMessage());
+            return null;
+        });
         this.getLogger().info("Hooked into Vault!");
 
         if (settings().migrationEnabled) {
@@ -167,12 +171,13 @@ public final class RedisEconomyPlugin extends JavaPlugin {
     public void onDisable() {
         if (playerListManager != null)
             playerListManager.stop();
-        if (redisManager != null)
-            redisManager.close();
+        //Terminate currencies first to flush pending balance updates while Redis is still connected
         if (currenciesManager != null) {
             this.getServer().getServicesManager().unregister(Economy.class, currenciesManager.getDefaultCurrency());
             currenciesManager.terminate();
         }
+        if (redisManager != null)
+            redisManager.close();
         getLogger().info("RedisEconomy disabled successfully!");
     }
 
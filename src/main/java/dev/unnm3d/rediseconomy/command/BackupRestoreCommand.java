@@ -12,11 +12,12 @@ import org.bukkit.command.TabCompleter;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
 
 @AllArgsConstructor
 public class BackupRestoreCommand implements CommandExecutor, TabCompleter {
@@ -33,28 +34,16 @@ public class BackupRestoreCommand implements CommandExecutor, TabCompleter {
             plugin.langs().send(sender, plugin.langs().invalidPath);
             return true;
         }
+        final Path userPath = Path.of(plugin.getDataFolder().getAbsolutePath(), args[0]);
+        if (label.equals("backup-economy")) {
+            backup(userPath).whenComplete((result, throwable) -> {
+                if (throwable != null) throwable.printStackTrace();
+                plugin.langs().send(sender, plugin.langs().backupRestoreFinished.replace("%file%", args[0]));
+            });
+            return true;
+        }
         CompletableFuture.runAsync(() -> {
-            Path userPath = Path.of(plugin.getDataFolder().getAbsolutePath(), args[0]);
             switch (label) {
-                case "backup-economy" -> {
-                    try (FileWriter fw = new FileWriter(userPath.normalize().toFile())) {
-                        StringBuilder sb = new StringBuilder();
-                        currenciesManager.getCurrencies().forEach(currency ->
-                                currency.getAccounts().forEach((uuid, balance) ->
-                                        sb.append(currency.getCurrencyName())
-                                                .append(";")
-                                                .append(uuid.toString())
-                                                .append(";")
-                                                .append(currenciesManager.getUsernameFromUUIDCache(uuid))
-                                                .append(";")
-                                                .append(balance)
-                                                .append(System.getProperty("line.separator"))
-                                ));
-                        fw.write(sb.toString());// currency;uuid;name;balance
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                }
                 case "restore-economy" -> {
                     try (FileInputStream is = new FileInputStream(userPath.normalize().toFile())) {
                         List<String> lines = new BufferedReader(new InputStreamReader(is)).lines().toList();
@@ -99,6 +88,53 @@ public class BackupRestoreCommand implements CommandExecutor, TabCompleter {
         return true;
     }
 
+    /**
+     * Write the accounts of every currency to the file, one currency after another, as currency;uuid;name;balance lines
+     *
+     * @param path The backup file
+     * @return A CompletionStage that completes when the file is written and closed
+     */
+    private CompletionStage<Void> backup(Path path) {
+        CompletableFuture<BufferedWriter> open = CompletableFuture.supplyAsync(() -> {
+            try {
+                return Files.newBufferedWriter(path.normalize());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return open.thenCompose(writer -> {
+            CompletionStage<Void> chain = CompletableFuture.completedFuture(null);
+            for (Currency currency : currenciesManager.getCurrencies()) {
+                chain = chain.thenCompose(v -> backupAccounts(currency, (uuid, balance) -> {
+                    try {
+                        writer.write(currency.getCurrencyName() + ";" + uuid + ";" + currenciesManager.getUsernameFromUUIDCache(uuid) + ";" + balance);
+                        writer.newLine();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+            return chain.whenComplete((result, throwable) -> {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        });
+    }
+
+    /**
+     * With lazy loading only part of the accounts is in memory, so they are streamed from Redis
+     */
+    private CompletionStage<Void> backupAccounts(Currency currency, BiConsumer<UUID, Double> consumer) {
+        if (!currency.isLazyLoading()) {
+            currency.getAccounts().forEach(consumer);
+            return CompletableFuture.completedFuture(null);
+        }
+        return currency.scanAccounts(consumer);
+    }
+
     @Override
     public @NotNull List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String alias, @NotNull String[] args) {
         return List.of("backup.csv");
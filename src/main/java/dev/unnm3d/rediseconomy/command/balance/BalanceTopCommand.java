@@ -3,8 +3,8 @@ package dev.unnm3d.rediseconomy.command.balance;
 import dev.unnm3d.rediseconomy.RedisEconomyPlugin;
 import dev.unnm3d.rediseconomy.currency.CurrenciesManager;
 import dev.unnm3d.rediseconomy.currency.Currency;
+import dev.unnm3d.rediseconomy.currency.Leaderboard;
 import dev.unnm3d.rediseconomy.utils.DecimalUtils;
-import io.lettuce.core.ScoredValue;
 import lombok.AllArgsConstructor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -12,9 +12,7 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
 
 
 @AllArgsConstructor
@@ -26,9 +24,9 @@ public class BalanceTopCommand implements CommandExecutor, TabCompleter {
     public boolean onCommand(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
 
         int page = 1;
-        if (args.length == 1)
+        if (args.length >= 1)
             try {
-                page = Integer.parseInt(args[0]);
+                page = Math.max(Integer.parseInt(args[0]), 1);
             } catch (NumberFormatException e) {
                 plugin.langs().send(sender, plugin.langs().missingArguments);
                 return true;
@@ -42,43 +40,32 @@ public class BalanceTopCommand implements CommandExecutor, TabCompleter {
         }
 
         final int finalPage = page;
-        //Baltop paging, 10 per page
-        baltopCurrency.getOrderedAccounts(200)
-                .thenApply(balances -> {
-                    List<ScoredValue<String>> pageBalances;
-                    if (balances.size() < (finalPage - 1) * 10) {//If the page is higher that the balances available
-                        return new ArrayList<ScoredValue<String>>();
-                    } else if (balances.size() > finalPage * 10) {
-                        pageBalances = balances.subList((finalPage - 1) * 10, finalPage * 10);
-                    } else pageBalances = balances.subList((finalPage - 1) * 10, balances.size());
-                    //Page formatting: clickable arrows to go to next/previous page
-                    plugin.langs().send(sender, plugin.langs().balanceTop.replace("%page%", String.valueOf(finalPage))
-                            .replace("%nextpage%", "<click:run_command:balancetop " + (balances.size() <= finalPage * 10 ? 1 : finalPage + 1) + ">-></click>")
-                            .replace("%prevpage%", "<click:run_command:balancetop " + (finalPage == 1 ? (balances.size() % 10) + 1 : finalPage - 1) + "><-</click>"));
+        final String currencyArgument = args.length == 2 ? " " + baltopCurrency.getCurrencyName() : "";
+        //Baltop paging, 10 per page. Only the requested page is read
+        baltopCurrency.getLeaderboardPage(page, 10).thenAccept(pageData -> {
+            if (pageData.positions().isEmpty()) return;//If the page is higher that the balances available
+            final long lastPage = Math.max((pageData.total() + 9) / 10, 1);
+            //Page formatting: clickable arrows to go to next/previous page
+            plugin.langs().send(sender, plugin.langs().balanceTop.replace("%page%", String.valueOf(finalPage))
+                    .replace("%nextpage%", "<click:run_command:balancetop " + (finalPage >= lastPage ? 1 : finalPage + 1) + currencyArgument + ">-></click>")
+                    .replace("%prevpage%", "<click:run_command:balancetop " + (finalPage == 1 ? lastPage : finalPage - 1) + currencyArgument + "><-</click>"));
 
-                    return new PageData(finalPage, pageBalances);
-                })
-                .thenAccept((data) -> {
-                    PageData pageData = (PageData) data;
-                    int i = 1;
-                    for (ScoredValue<String> tuple : pageData.pageBalances) {
-                        String username = currenciesManager.getUsernameFromUUIDCache(UUID.fromString(tuple.getValue()));
-                        plugin.langs().send(sender, plugin.langs().balanceTopFormat
-                                .replace("%pos%", String.valueOf((pageData.pageNumber - 1) * 10 + i))
-                                .replace("%player%", username == null ? tuple.getValue() + "-Unknown" : username)
-                                .replace("%balance_short%",
-                                        DecimalUtils.shortAmount(tuple.getScore(), baltopCurrency.getDecimalFormat()) +
-                                                (tuple.getScore() == 1 ? baltopCurrency.getCurrencySingular() : baltopCurrency.getCurrencyPlural()))
-                                .replace("%balance%", baltopCurrency.format(tuple.getScore())));
-                        i++;
-                    }
-                });
+            int i = 1;
+            for (Leaderboard.Position position : pageData.positions()) {
+                String username = currenciesManager.getUsernameFromUUIDCache(position.uuid());
+                plugin.langs().send(sender, plugin.langs().balanceTopFormat
+                        .replace("%pos%", String.valueOf((finalPage - 1) * 10L + i))
+                        .replace("%player%", username == null ? position.uuid() + "-Unknown" : username)
+                        .replace("%balance_short%",
+                                DecimalUtils.shortAmount(position.balance(), baltopCurrency.getDecimalFormat()) +
+                                        (position.balance() == 1 ? baltopCurrency.getCurrencySingular() : baltopCurrency.getCurrencyPlural()))
+                        .replace("%balance%", baltopCurrency.format(position.balance())));
+                i++;
+            }
+        });
         return true;
     }
 
-    private record PageData(int pageNumber, List<ScoredValue<String>> pageBalances) {
-    }
-
     @Override
     public @NotNull List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
         if (args.length == 1) {
@@ -1,6 +1,7 @@
 package dev.unnm3d.rediseconomy.command.transaction;
 
 import dev.unnm3d.rediseconomy.RedisEconomyPlugin;
+import dev.unnm3d.rediseconomy.transaction.IndexedArchiveReader;
 import lombok.AllArgsConstructor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -36,6 +37,6 @@ public class ArchiveTransactionsCommand implements CommandExecutor, TabCompleter
 
     @Override
     public @NotNull List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String alias, @NotNull String[] args) {
-        return List.of("backup.rediseco");
+        return List.of("backup.rediseco.gz", "backup" + IndexedArchiveReader.EXTENSION);
     }
 }
@@ -2,16 +2,23 @@ package dev.unnm3d.rediseconomy.command.transaction;
 
 import dev.unnm3d.rediseconomy.RedisEconomyPlugin;
 import dev.unnm3d.rediseconomy.transaction.AccountID;
+import dev.unnm3d.rediseconomy.transaction.IndexedArchiveReader;
+import dev.unnm3d.rediseconomy.transaction.TransactionCursor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.text.ParseException;
-import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 
 public class BrowseTransactionsCommand extends TransactionCommandAbstract implements CommandExecutor, TabCompleter {
@@ -32,51 +39,98 @@ public class BrowseTransactionsCommand extends TransactionCommandAbstract implem
         if (!accountID.isPlayer() && target.length() > 16) {
             plugin.langs().send(sender, plugin.langs().truncatedID);
         }
-        final String afterDateString = args.length == 3 ? args[1] : "anytime";
-        final String beforeDateString = args.length == 3 ? args[2] : "anytime";
+        if (args.length >= 3 && args[1].equals("--archive")) {
+            browseArchive(sender, target, accountID, args[2]);
+            return true;
+        }
+        final String afterDateString = args.length >= 3 ? args[1] : "anytime";
+        final String beforeDateString = args.length >= 3 ? args[2] : "anytime";
+        long after = 0;
+        long before = Long.MAX_VALUE;
+        TransactionCursor cursor = null;
+        try {
+            if (!afterDateString.equals("anytime"))
+                after = formatDate(afterDateString).getTime() + 1;
+            if (!beforeDateString.equals("anytime"))
+                before = formatDate(beforeDateString).getTime() - 1;
+        } catch (ParseException e) {
+            plugin.langs().send(sender, plugin.langs().incorrectDate);
+        }
+        if (args.length == 4) {
+            cursor = TransactionCursor.parse(args[3]);
+        }
 
-        plugin.getCurrenciesManager().getExchange().getTransactions(accountID, Integer.MAX_VALUE).thenAccept(transactions -> {
-            long init = System.currentTimeMillis();
-            if (transactions.isEmpty()) {
+        final long init = System.currentTimeMillis();
+        plugin.getCurrenciesManager().getExchange().getTransactions(accountID, after, before, cursor, plugin.settings().transactionsPageSize).thenAccept(page -> {
+            if (page.transactions().isEmpty() && !page.hasNext()) {
                 plugin.langs().send(sender, plugin.langs().noTransactionFound.replace("%player%", target));
                 return;
             }
 
-            Date afterDate = null;
-            Date beforeDate = null;
-            try {
-                if (args.length == 3) {
-                    afterDate = formatDate(args[1]);
-                    beforeDate = formatDate(args[2]);
-                }
-            } catch (ParseException e) {
-                plugin.langs().send(sender, plugin.langs().incorrectDate);
-            }
-
             plugin.langs().send(sender, plugin.langs().transactionsStart
                     .replace("%player%", target)
                     .replace("%after%", afterDateString)
                     .replace("%before%", beforeDateString));
-            final Date finalAfterDate = afterDate;
-            final Date finalBeforeDate = beforeDate;
-            transactions.forEach((i, transaction) -> {
-                Date transactionDate = new Date(transactions.get(i).getTimestamp());
-                if (finalAfterDate != null)
-                    if (!transactionDate.after(finalAfterDate)) return;
-                if (finalBeforeDate != null)
-                    if (!transactionDate.before(finalBeforeDate)) return;
-
-                sendTransaction(sender, i, transaction, afterDateString + " " + beforeDateString);
-            });
+            page.transactions().forEach((i, transaction) ->
+                    sendTransaction(sender, i, transaction, afterDateString + " " + beforeDateString));
 
             plugin.langs().send(sender, plugin.langs().transactionsEnd
                     .replace("%player%", target)
                     .replace("%time%", String.valueOf(System.currentTimeMillis() - init)));
+            if (page.hasNext()) {
+                plugin.langs().send(sender, plugin.langs().transactionsNextPage
+                        .replace("%player%", target)
+                        .replace("%after%", afterDateString)
+                        .replace("%before%", beforeDateString)
+                        .replace("%cursor%", page.nextCursor().toString()));
+            }
         });
 
         return true;
     }
 
+    /**
+     * Show the transactions of an account from an indexed archive file, without reading Redis
+     */
+    private void browseArchive(CommandSender sender, String target, AccountID accountID, String fileName) {
+        if (fileName.contains("..") || fileName.startsWith(File.pathSeparator)) {
+            plugin.langs().send(sender, plugin.langs().invalidPath);
+            return;
+        }
+        final Path archivePath = Path.of(plugin.getDataFolder().getAbsolutePath(), fileName);
+        final long init = System.currentTimeMillis();
+        CompletableFuture.supplyAsync(() -> {
+            try (IndexedArchiveReader reader = new IndexedArchiveReader(archivePath)) {
+                return reader.getTransactions(accountID);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).thenAccept(transactions -> {
+            if (transactions.isEmpty()) {
+                plugin.langs().send(sender, plugin.langs().noTransactionFound.replace("%player%", target));
+                return;
+            }
+
+            plugin.langs().send(sender, plugin.langs().transactionsStart
+                    .replace("%player%", target)
+                    .replace("%after%", "anytime")
+                    .replace("%before%", "anytime"));
+            transactions.forEach((i, transaction) -> sendTransaction(sender, i, transaction));
+
+            plugin.langs().send(sender, plugin.langs().transactionsEnd
+                    .replace("%player%", target)
+                    .replace("%time%", String.valueOf(System.currentTimeMillis() - init)));
+        }).exceptionally(throwable -> {
+            final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ?
+                    throwable.getCause() : throwable;
+            plugin.getLogger().warning("Failed to read the archive " + fileName + ": " + cause);
+            plugin.langs().send(sender, plugin.langs().transactionsArchiveReadFailed
+                    .replace("%file%", fileName)
+                    .replace("%error%", String.valueOf(cause.getMessage())));
+            return null;
+        });
+    }
+
     @Override
     public @NotNull List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
         if (args.length == 1) {
@@ -90,7 +144,7 @@ public class BrowseTransactionsCommand extends TransactionCommandAbstract implem
             return plugin.getCurrenciesManager().getNameUniqueIds().keySet().stream().filter(name -> name.toUpperCase().startsWith(args[0].toUpperCase())).toList();
         } else if (args.length == 2) {
             if (args[1].trim().isEmpty())
-                return List.of("^ usage ^", convertTimeWithLocalTimeZome(System.currentTimeMillis() - 86400000) + " " + convertTimeWithLocalTimeZome(System.currentTimeMillis()), "<after the date...> <before the date...>");
+                return List.of("^ usage ^", "--archive", convertTimeWithLocalTimeZome(System.currentTimeMillis() - 86400000) + " " + convertTimeWithLocalTimeZome(System.currentTimeMillis()), "<after the date...> <before the date...>");
         }
         return List.of();
     }
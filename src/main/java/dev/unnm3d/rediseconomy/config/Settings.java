@@ -47,6 +47,48 @@ public class Settings {
     public int placeholderCacheUpdateInterval = 5000;
     @Comment("How many accounts to show in the %rediseco_top_number...% placeholder")
     public int baltopPlaceholderAccounts = 100;
+    @Comment("How long in milliseconds the prefix, suffix and name of the top players are cached for the top placeholders")
+    public int placeholderMetadataCacheMillis = 60000;
+    @Comment({"Write-behind window in milliseconds for balance updates (0 to disable, 20-50 is recommended on busy servers)",
+            "Updates of the same account inside the window are collapsed into a single Redis write"})
+    public int balanceWriteBehindMillis = 0;
+    @Comment({"Publish balance updates as compact binary frames instead of text",
+            "Enable it only after every RedisEconomy instance has been updated: binary and text updates are both accepted"})
+    public boolean binaryUpdateMessages = false;
+    @Comment({"Window in milliseconds to collect balance updates of a currency and publish them as one batch frame (0 to disable)",
+            "Batch frames are binary: enable it only after every RedisEconomy instance has been updated"})
+    public int balanceBroadcastBatchMillis = 0;
+    @Comment({"Load only online players and keep up to this many recently used offline accounts in memory (0 to load every account at startup)",
+            "Offline accounts outside the cache are read from Redis when they are first requested"})
+    public int lazyAccountCacheSize = 0;
+    @Comment("Maximum time in milliseconds a Vault call waits for an account that is not in memory")
+    public int lazyAccountLoadTimeoutMillis = 200;
+    @Comment("How many accounts are requested per ZSCAN page when all the accounts are loaded at startup")
+    public int accountLoadPageSize = 1000;
+    @Comment({"Where transactions are stored: HASH (one hash per account, TTL needs Redis 7.4+) or STREAM (one stream per account)",
+            "Transactions saved with one storage are not visible with the other"})
+    public String transactionsStorage = "HASH";
+    @Comment({"Approximate maximum number of transactions kept for each account with the STREAM storage",
+            "With the STREAM storage the currency transactions TTL expires the history of accounts without transactions for that time"})
+    public long transactionsStreamMaxLength = 1000;
+    @Comment({"How many transaction ids each instance reserves at once with the HASH storage",
+            "Ids stay unique but are only increasing on each instance, unused ids are skipped on restart"})
+    public int transactionIdBlockSize = 1000;
+    @Comment({"Save new transactions in the binary format, which keeps any character of the reasons and bank ids",
+            "Transactions in both formats are always readable: enable it only after every RedisEconomy instance has been updated"})
+    public boolean binaryTransactions = false;
+    @Comment({"Window in milliseconds to collect transactions and save them with a single script call (0 to disable)",
+            "A batch is also saved as soon as it reaches transactionsBatchSize transactions"})
+    public int transactionsBatchMillis = 0;
+    public int transactionsBatchSize = 256;
+    @Comment({"How many keys are scanned and unlinked at once when removing every transaction",
+            "and the pause in milliseconds between two batches"})
+    public int keyRemovalBatchSize = 500;
+    public int keyRemovalPauseMillis = 10;
+    @Comment("How many accounts are read concurrently by /archive-transactions")
+    public int archiveParallelism = 4;
+    @Comment("How many transactions are shown on each page of /browse-transactions")
+    public int transactionsPageSize = 50;
     @Comment("Fixed pool size for making transactions")
     public int transactionExecutorThreads = 3;
     @Comment({"Currency name must be less than 8 characters",
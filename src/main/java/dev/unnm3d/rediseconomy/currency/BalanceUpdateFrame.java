@@ -0,0 +1,165 @@
+package dev.unnm3d.rediseconomy.currency;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Binary frame of a player balance update
+ * <p>
+ * Layout: version (1 byte), instance id (16 bytes), player uuid (16 bytes), balance (8 bytes), optional UTF-8 name (remaining bytes)
+ * <p>
+ * Batch layout: batch version (1 byte), instance id (16 bytes), record count (4 bytes),
+ * then for each record player uuid (16 bytes), balance (8 bytes), name length (1 byte, 0 if not sent), UTF-8 name
+ *
+ * @param instanceMost  most significant bits of the sender instance id
+ * @param instanceLeast least significant bits of the sender instance id
+ * @param uuid          the player uuid
+ * @param balance       the new balance
+ * @param playerName    the player name, null if not sent
+ */
+public record BalanceUpdateFrame(long instanceMost, long instanceLeast, @NotNull UUID uuid, double balance,
+                                 @Nullable String playerName) {
+    public static final byte VERSION = 1;
+    public static final byte BATCH_VERSION = 2;
+    private static final int BATCH_HEADER_SIZE = 21;
+    /**
+     * Size of the frame before the balance: version, instance id and player uuid
+     */
+    public static final int HEADER_SIZE = 33;
+    public static final int MIN_SIZE = HEADER_SIZE + 8;
+
+    /**
+     * Text messages start with the instance UUID, so the first byte is always a printable character
+     *
+     * @param message the received message
+     * @return true if the message is a binary frame
+     */
+    public static boolean isBinary(byte[] message) {
+        return message.length >= MIN_SIZE && message[0] == VERSION;
+    }
+
+    public static boolean isBatch(byte[] message) {
+        return message.length >= BATCH_HEADER_SIZE && message[0] == BATCH_VERSION;
+    }
+
+    public static byte[] encode(@NotNull UUID instanceId, @NotNull UUID uuid, double balance, @Nullable String playerName) {
+        final byte[] name = playerName == null ? new byte[0] : playerName.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(MIN_SIZE + name.length)
+                .put(encodeHeader(instanceId, uuid))
+                .putDouble(balance)
+                .put(name)
+                .array();
+    }
+
+    /**
+     * Encodes the part of the frame before the balance
+     * Used by scripts that append the balance server-side
+     *
+     * @param instanceId the sender instance id
+     * @param uuid       the player uuid
+     * @return the frame header
+     */
+    public static byte[] encodeHeader(@NotNull UUID instanceId, @NotNull UUID uuid) {
+        return ByteBuffer.allocate(HEADER_SIZE)
+                .put(VERSION)
+                .putLong(instanceId.getMostSignificantBits())
+                .putLong(instanceId.getLeastSignificantBits())
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+
+    public static BalanceUpdateFrame decode(byte[] message) {
+        final ByteBuffer buffer = ByteBuffer.wrap(message, 1, message.length - 1);
+        final long instanceMost = buffer.getLong();
+        final long instanceLeast = buffer.getLong();
+        final UUID uuid = new UUID(buffer.getLong(), buffer.getLong());
+        final double balance = buffer.getDouble();
+        final String playerName = buffer.hasRemaining() ?
+                new String(message, MIN_SIZE, buffer.remaining(), StandardCharsets.UTF_8) : null;
+        return new BalanceUpdateFrame(instanceMost, instanceLeast, uuid, balance, playerName);
+    }
+
+    /**
+     * Encodes many balance updates in a single batch frame
+     *
+     * @param instanceId the sender instance id
+     * @param updates    the updates to send, their instance id is ignored
+     * @return the batch frame
+     */
+    public static byte[] encodeBatch(@NotNull UUID instanceId, @NotNull Collection<BalanceUpdateFrame> updates) {
+        final List<byte[]> names = new ArrayList<>(updates.size());
+        int size = BATCH_HEADER_SIZE;
+        for (BalanceUpdateFrame update : updates) {
+            byte[] name = update.playerName == null ? new byte[0] : update.playerName.getBytes(StandardCharsets.UTF_8);
+            //The length is stored in one byte, longer names are not sent
+            if (name.length > 255) name = new byte[0];
+            names.add(name);
+            size += 25 + name.length;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(size)
+                .put(BATCH_VERSION)
+                .putLong(instanceId.getMostSignificantBits())
+                .putLong(instanceId.getLeastSignificantBits())
+                .putInt(updates.size());
+        int i = 0;
+        for (BalanceUpdateFrame update : updates) {
+            final byte[] name = names.get(i++);
+            buffer.putLong(update.uuid.getMostSignificantBits())
+                    .putLong(update.uuid.getLeastSignificantBits())
+                    .putDouble(update.balance)
+                    .put((byte) name.length)
+                    .put(name);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a batch frame. Every record carries the instance id of the batch
+     *
+     * @param message the batch frame
+     * @return the records of the batch
+     */
+    public static List<BalanceUpdateFrame> decodeBatch(byte[] message) {
+        final ByteBuffer buffer = ByteBuffer.wrap(message, 1, message.length - 1);
+        final long instanceMost = buffer.getLong();
+        final long instanceLeast = buffer.getLong();
+        final int count = buffer.getInt();
+        final List<BalanceUpdateFrame> updates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final UUID uuid = new UUID(buffer.getLong(), buffer.getLong());
+            final double balance = buffer.getDouble();
+            final int nameLength = buffer.get() & 0xFF;
+            String playerName = null;
+            if (nameLength > 0) {
+                playerName = new String(message, buffer.position(), nameLength, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + nameLength);
+            }
+            updates.add(new BalanceUpdateFrame(instanceMost, instanceLeast, uuid, balance, playerName));
+        }
+        return updates;
+    }
+
+    /**
+     * Reads only the sender of a batch frame
+     *
+     * @param message    the batch frame
+     * @param instanceId the instance id to compare
+     * @return true if the batch has been sent by the given instance
+     */
+    public static boolean isBatchFrom(byte[] message, @NotNull UUID instanceId) {
+        final ByteBuffer buffer = ByteBuffer.wrap(message, 1, 16);
+        return buffer.getLong() == instanceId.getMostSignificantBits() && buffer.getLong() == instanceId.getLeastSignificantBits();
+    }
+
+    public boolean isFrom(@NotNull UUID instanceId) {
+        return instanceMost == instanceId.getMostSignificantBits() && instanceLeast == instanceId.getLeastSignificantBits();
+    }
+}
@@ -8,6 +8,7 @@ import dev.unnm3d.rediseconomy.redis.RedisKeys;
 import dev.unnm3d.rediseconomy.redis.RedisManager;
 import dev.unnm3d.rediseconomy.transaction.EconomyExchange;
 import io.lettuce.core.ScoredValue;
+import io.lettuce.core.ScriptOutputType;
 import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
 import lombok.Getter;
 import net.milkbowl.vault.economy.Economy;
@@ -16,12 +17,14 @@ import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.RegisteredServiceProvider;
 import org.bukkit.plugin.ServicePriority;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.stream.Collectors;
@@ -40,6 +43,14 @@ public class CurrenciesManager extends RedisEconomyAPI implements Listener {
     private final HashMap<String, Currency> currencies;
     @Getter
     private final ConcurrentHashMap<String, UUID> nameUniqueIds;
+    /**
+     * Reverse index of nameUniqueIds, kept consistent with it
+     */
+    private final ConcurrentHashMap<UUID, String> uniqueIdNames;
+    /**
+     * Lowercase name -> case-sensitive name, kept consistent with nameUniqueIds
+     */
+    private final ConcurrentHashMap<String, String> caseFoldedNames;
     private final ConcurrentHashMap<UUID, List<UUID>> lockedAccounts;
 
 
@@ -47,12 +58,18 @@ public class CurrenciesManager extends RedisEconomyAPI implements Listener {
         INSTANCE = this;
         this.completeMigration = new CompletableFuture<>();
         this.redisManager = redisManager;
-        this.exchange = new EconomyExchange(plugin);
+        this.exchange = new EconomyExchange(plugin, redisManager);
         this.plugin = plugin;
         this.configManager = configManager;
         this.currencies = new HashMap<>();
         try {
             this.nameUniqueIds = loadRedisNameUniqueIds().toCompletableFuture().get(plugin.getConfigManager().getSettings().redis.timeout(), TimeUnit.MILLISECONDS);
+            this.uniqueIdNames = new ConcurrentHashMap<>(nameUniqueIds.size());
+            this.caseFoldedNames = new ConcurrentHashMap<>(nameUniqueIds.size());
+            nameUniqueIds.forEach((name, uuid) -> {
+                uniqueIdNames.put(uuid, name);
+                caseFoldedNames.put(name.toLowerCase(Locale.ROOT), name);
+            });
             this.lockedAccounts = loadLockedAccounts().toCompletableFuture().get(plugin.getConfigManager().getSettings().redis.timeout(), TimeUnit.MILLISECONDS);
         } catch (InterruptedException | ExecutionException | TimeoutException e) {
             throw new RuntimeException(e);
@@ -80,6 +97,11 @@ public class CurrenciesManager extends RedisEconomyAPI implements Listener {
             if (isReload && currencySettings.getCurrencyName().equals(configManager.getSettings().defaultCurrencyName))
                 continue;
 
+            //The replacement loads the balances from Redis, so the old updates must be written first
+            final Currency oldCurrency = currencies.get(currencySettings.getCurrencyName());
+            if (oldCurrency != null)
+                awaitPendingUpdates(List.of(oldCurrency));
+
             Currency currency;
             if (currencySettings.isBankEnabled()) {
                 currency = new CurrencyWithBanks(this, currencySettings);
@@ -88,16 +110,9 @@ public class CurrenciesManager extends RedisEconomyAPI implements Listener {
             }
 
             //Replace existing currency with updated settings and terminate the old executors
-            Optional.ofNullable(currencies.put(currencySettings.getCurrencyName(), currency))
-                    .ifPresent(oldCurrency -> oldCurrency.updateExecutors.forEach(executor -> {
-                        try {
-                            if (!executor.awaitTermination(100, TimeUnit.MILLISECONDS)) {
-                                executor.shutdownNow();
-                            }
-                        } catch (InterruptedException e1) {
-                            executor.shutdownNow();
-                        }
-                    }));
+            currencies.put(currencySettings.getCurrencyName(), currency);
+            if (oldCurrency != null)
+                oldCurrency.terminateExecutors();
         }
         //Remove currencies that are not in the config anymore
         currencies.entrySet().removeIf(entry->{
@@ -159,7 +174,16 @@ public class CurrenciesManager extends RedisEconomyAPI implements Listener {
     }
 
     void updateNameUniqueId(String name, UUID uuid) {
-        nameUniqueIds.put(name, uuid);
+        final UUID previous = nameUniqueIds.put(name, uuid);
+        //The name moved to another uuid, the previous uuid must not resolve to it anymore
+        if (previous != null && !previous.equals(uuid) && uniqueIdNames.remove(previous, name)) {
+            nameUniqueIds.entrySet().stream()
+                    .filter(entry -> entry.getValue().equals(previous))
+                    .findFirst()
+                    .ifPresent(entry -> uniqueIdNames.put(previous, entry.getKey()));
+        }
+        uniqueIdNames.put(uuid, name);
+        caseFoldedNames.put(name.toLowerCase(Locale.ROOT), name);
     }
 
     /**
@@ -177,6 +201,23 @@ public class CurrenciesManager extends RedisEconomyAPI implements Listener {
             }
         }
         nameUniqueIds.entrySet().removeAll(removed.entrySet());
+        removed.forEach((name, uuid) -> {
+            //If the uuid is still known with another name, point the reverse index to it
+            if (uniqueIdNames.remove(uuid, name)) {
+                nameUniqueIds.entrySet().stream()
+                        .filter(entry -> entry.getValue().equals(uuid))
+                        .findFirst()
+                        .ifPresent(entry -> uniqueIdNames.put(uuid, entry.getKey()));
+            }
+            //Same for other case variants of the removed name
+            final String caseFolded = name.toLowerCase(Locale.ROOT);
+            if (caseFoldedNames.remove(caseFolded, name)) {
+                nameUniqueIds.keySet().stream()
+                        .filter(otherName -> otherName.equalsIgnoreCase(name))
+                        .findFirst()
+                        .ifPresent(otherName -> caseFoldedNames.put(caseFolded, otherName));
+            }
+        });
         if (!removed.isEmpty()) {
             removeRedisNameUniqueIds(removed);
             if (resetBalance) {
@@ -200,7 +241,7 @@ public class CurrenciesManager extends RedisEconomyAPI implements Listener {
         currencyReset.getOrderedAccounts(Integer.MAX_VALUE).thenAccept(accounts -> {
             for (ScoredValue<String> account : accounts) {
                 UUID uuid = UUID.fromString(account.getValue());
-                if (!nameUniqueIds.containsValue(uuid)) {
+                if (!uniqueIdNames.containsKey(uuid)) {
                     currencyReset.setPlayerBalance(uuid, null, 0.0);
                 }
             }
@@ -219,29 +260,26 @@ public class CurrenciesManager extends RedisEconomyAPI implements Listener {
 
     @Override
     public @Nullable UUID getUUIDFromUsernameCache(@NotNull String username) {
-        return nameUniqueIds.get(username);
+        final UUID uuid = nameUniqueIds.get(username);
+        if (uuid != null) return uuid;
+        //Fallback to a case-insensitive match
+        final String caseSensitiveName = caseFoldedNames.get(username.toLowerCase(Locale.ROOT));
+        return caseSensitiveName == null ? null : nameUniqueIds.get(caseSensitiveName);
     }
 
     @Override
     public @Nullable String getUsernameFromUUIDCache(@NotNull UUID uuid) {
         if (uuid.equals(RedisKeys.getServerUUID())) return "Server";
-        return nameUniqueIds.entrySet().stream()
-                .filter(e -> e.getValue().equals(uuid))
-                .map(Map.Entry::getKey)
-                .findFirst()
-                .orElseGet(() -> {
-                    RedisEconomyPlugin.debug("Couldn't find username for UUID " + uuid + " in cache!");
-                    return null;
-                });
+        final String username = uniqueIdNames.get(uuid);
+        if (username == null) {
+            RedisEconomyPlugin.debug("Couldn't find username for UUID " + uuid + " in cache!");
+        }
+        return username;
     }
 
     @Override
     public @NotNull String getCaseSensitiveName(@NotNull String caseInsensitiveName) {
-        for (Map.Entry<String, UUID> entry : nameUniqueIds.entrySet()) {
-            if (entry.getKey().equalsIgnoreCase(caseInsensitiveName))
-                return entry.getKey();
-        }
-        return caseInsensitiveName;
+        return caseFoldedNames.getOrDefault(caseInsensitiveName.toLowerCase(Locale.ROOT), caseInsensitiveName);
     }
 
     @Override
@@ -256,21 +294,20 @@ public class CurrenciesManager extends RedisEconomyAPI implements Listener {
     @EventHandler
     private void onJoin(PlayerJoinEvent e) {
         getCurrencies().forEach(currency ->
-                currency.getAccountRedis(e.getPlayer().getUniqueId())
-                        .thenAccept(balance -> {
-                            RedisEconomyPlugin.debug("00 Loaded " + e.getPlayer().getName() + "'s balance of " + balance + " " + currency.getCurrencyName());
-
-                            if (balance == null) {
-                                currency.createPlayerAccount(e.getPlayer());
-                            } else {
-                                currency.updateAccountLocal(e.getPlayer().getUniqueId(), e.getPlayer().getName(), balance);
-                            }
-                        }).exceptionally(ex -> {
+                currency.loadOrCreateAccount(e.getPlayer().getUniqueId(), e.getPlayer().getName())
+                        .thenAccept(balance -> RedisEconomyPlugin.debug("00 Loaded " + e.getPlayer().getName() + "'s balance of " + balance + " " + currency.getCurrencyName())
+                        ).exceptionally(ex -> {
                             ex.printStackTrace();
                             return null;
                         }));
     }
 
+    @EventHandler
+    private void onQuit(PlayerQuitEvent e) {
+        //With lazy loading the account becomes evictable once the player is offline
+        getCurrencies().forEach(currency -> currency.touchAccount(e.getPlayer().getUniqueId()));
+    }
+
     private CompletionStage<ConcurrentHashMap<String, UUID>> loadRedisNameUniqueIds() {
         return redisManager.getConnectionAsync(connection ->
                 connection.hgetall(NAME_UUID.toString())
@@ -357,6 +394,12 @@ public class CurrenciesManager extends RedisEconomyAPI implements Listener {
             asyncCommands.renamenx(RedisKeys.BALANCE_PREFIX + currency.getCurrencyName() + "_backup",
                     RedisKeys.BALANCE_PREFIX + newCurrency.getCurrencyName()).thenAccept(success ->
                     RedisEconomyPlugin.debug("Switch2 - Write the backup on the new currency key: " + success));
+            //Both total supplies are computed again after the swap, on the same connection
+            for (Currency switched : List.of(currency, newCurrency)) {
+                Currency.TOTAL_SUPPLY_SCRIPT.<String, String, String>eval(asyncCommands, ScriptOutputType.VALUE,
+                                new String[]{RedisKeys.BALANCE_PREFIX + switched.getCurrencyName(), RedisKeys.TOTAL_SUPPLY_PREFIX + switched.getCurrencyName()})
+                        .thenAccept(supply -> RedisEconomyPlugin.debug("Switch3 - Total supply of " + switched.getCurrencyName() + ": " + supply));
+            }
             return null;
         });
     }
@@ -469,33 +512,76 @@ public class CurrenciesManager extends RedisEconomyAPI implements Listener {
     }
 
     private void registerUpdateChannelPattern() {
-        StatefulRedisPubSubConnection<String, String> connection = redisManager.getPubSubConnection();
-        connection.addListener(new RedisEconomyListener() {
+        StatefulRedisPubSubConnection<byte[], byte[]> connection = redisManager.getBinaryPubSubConnection();
+        connection.addListener(new RedisEconomyBinaryListener() {
             @Override
-            public void message(String pattern, String channel, String message) {
-                String[] split = message.split(";;");
+            public void message(byte[] pattern, byte[] channelBytes, byte[] message) {
+                final String channel = new String(channelBytes, StandardCharsets.UTF_8);
+                Currency currency = null;
+                String channelPrefix = null;
+                for (Currency c : getCurrencies()) {
+                    String name = c.getCurrencyName();
+                    if (channel.endsWith(name)) {
+                        currency = c;
+                        channelPrefix = channel.substring(0, channel.length() - name.length());
+                        break;
+                    }
+                }
+                if (currency == null) return;
+
+                if (BalanceUpdateFrame.isBatch(message)) {
+                    if (BalanceUpdateFrame.isBatchFrom(message, RedisEconomyPlugin.getInstanceUUID())) return;
+                    currency.processBalanceUpdates(BalanceUpdateFrame.decodeBatch(message));
+                    return;
+                }
+                if (BalanceUpdateFrame.isBinary(message)) {
+                    final BalanceUpdateFrame frame = BalanceUpdateFrame.decode(message);
+                    if (frame.isFrom(RedisEconomyPlugin.getInstanceUUID())) return;
+                    currency.processBalanceUpdate(frame.uuid(), frame.playerName(), frame.balance());
+                    return;
+                }
+
+                //Text format, still accepted from instances that do not send binary frames
+                String[] split = new String(message, StandardCharsets.UTF_8).split(";;");
                 if (split.length < 3) {
                     Bukkit.getLogger().severe("Invalid message received from RedisEco channel, consider updating RedisEconomy");
                 }
                 //0 instanceID, 1 playerUUID, 2 playerName/maxBal, 3 balance/emtpty/empty (if applicable)
                 if (split[0].equals(RedisEconomyPlugin.getInstanceUUID().toString())) return;
-                final String[] updateArgs = Arrays.copyOfRange(split, 1, split.length);
-                for (Currency currency : getCurrencies()) {
-                    String name = currency.getCurrencyName();
-                    if (channel.endsWith(name)) {
-                        currency.processUpdateMessage(channel.substring(0, channel.length() - name.length()), updateArgs);
-                        return;
-                    }
-                }
+                currency.processUpdateMessage(channelPrefix, Arrays.copyOfRange(split, 1, split.length));
             }
         });
-        connection.async().psubscribe(RedisKeys.UPDATE_PLAYER_CHANNEL_PREFIX.wildcard(), RedisKeys.UPDATE_MAX_BAL_PREFIX.wildcard(),
-                RedisKeys.UPDATE_BANK_CHANNEL_PREFIX.wildcard(), UPDATE_BANK_OWNER_CHANNEL_PREFIX.wildcard());
+        connection.async().psubscribe(toBytes(RedisKeys.UPDATE_PLAYER_CHANNEL_PREFIX.wildcard()), toBytes(RedisKeys.UPDATE_MAX_BAL_PREFIX.wildcard()),
+                toBytes(RedisKeys.UPDATE_BANK_CHANNEL_PREFIX.wildcard()), toBytes(UPDATE_BANK_OWNER_CHANNEL_PREFIX.wildcard()));
         RedisEconomyPlugin.debug("start1b Listening to RedisEco channel " + RedisKeys.UPDATE_PLAYER_CHANNEL_PREFIX.wildcard());
 
     }
 
+    private static byte[] toBytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Send the write-behind updates of the currencies and wait for every cloud update to complete,
+     * for up to the Redis timeout
+     *
+     * @param currencyList The currencies to flush
+     */
+    private void awaitPendingUpdates(Collection<Currency> currencyList) {
+        try {
+            CompletableFuture.allOf(currencyList.stream()
+                            .map(Currency::flushPendingUpdates)
+                            .toArray(CompletableFuture[]::new))
+                    .get(configManager.getSettings().redis.timeout(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            plugin.getLogger().warning("Failed to write the pending balance updates: " + e.getMessage());
+        }
+    }
+
     public void terminate() {
+        awaitPendingUpdates(currencies.values());
         currencies.values().forEach(currency -> {
             currency.updateExecutors.forEach(ex -> {
                 CompletableFuture.runAsync(() -> {
@@ -3,10 +3,17 @@ package dev.unnm3d.rediseconomy.currency;
 import dev.unnm3d.rediseconomy.RedisEconomyPlugin;
 import dev.unnm3d.rediseconomy.config.CurrencySettings;
 import dev.unnm3d.rediseconomy.redis.RedisKeys;
+import dev.unnm3d.rediseconomy.redis.RedisScript;
 import dev.unnm3d.rediseconomy.transaction.AccountID;
 import dev.unnm3d.rediseconomy.transaction.Transaction;
+import dev.unnm3d.rediseconomy.utils.UUIDDoubleMap;
 import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
 import io.lettuce.core.ScoredValue;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.output.ScoredValueStreamingChannel;
+import io.netty.util.concurrent.FastThreadLocalThread;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import net.milkbowl.vault.economy.Economy;
@@ -16,20 +23,99 @@ import org.bukkit.OfflinePlayer;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 
 @AllArgsConstructor
 public class Currency implements Economy {
+    /**
+     * KEYS: balances zset, max balances hash, name-uuid hash, update channel, total supply
+     * ARGV: uuid, delta, default max balance, player name (or empty), update message prefix (empty to not publish), binary frame name suffix (optional)
+     * If the name suffix is passed, the balance is packed as a binary double (see BalanceUpdateFrame)
+     * Returns {1, newBalance} or {0, currentBalance} if the bounds were not respected
+     */
+    private static final RedisScript DELTA_SCRIPT = new RedisScript("local c=redis.call('zscore',KEYS[1],ARGV[1])local d=tonumber(ARGV[2])local n=(tonumber(c) or 0)+d " +
+            "if d<0 and n<0 then return{0,c or '0'}end " +
+            "local m=tonumber(redis.call('hget',KEYS[2],ARGV[1])) or tonumber(ARGV[3]) or math.huge " +
+            "if d>0 and n>m then return{0,c or '0'}end " +
+            "n=redis.call('zincrby',KEYS[1],ARGV[2],ARGV[1])" +
+            "if redis.call('exists',KEYS[5])==1 then redis.call('incrbyfloat',KEYS[5],ARGV[2])end " +
+            "if ARGV[4]~='' then redis.call('hset',KEYS[3],ARGV[4],ARGV[1])end " +
+            "if ARGV[6] then redis.call('publish',KEYS[4],ARGV[5]..struct.pack('>d',tonumber(n))..ARGV[6])" +
+            "elseif ARGV[5]~='' then redis.call('publish',KEYS[4],ARGV[5]..n)end return{1,n}");
+    /**
+     * KEYS: balances zset, total supply, name-uuid hash, update channel
+     * ARGV: uuid, balance, player name (or empty), update message (empty to not publish)
+     * Sets the balance and moves the total supply by the difference, if the total supply is initialized
+     */
+    private static final RedisScript SET_BALANCE_SCRIPT = new RedisScript("local o=tonumber(redis.call('zscore',KEYS[1],ARGV[1])) or 0 " +
+            "redis.call('zadd',KEYS[1],ARGV[2],ARGV[1])" +
+            "if redis.call('exists',KEYS[2])==1 then redis.call('incrbyfloat',KEYS[2],tonumber(ARGV[2])-o)end " +
+            "if ARGV[3]~='' then redis.call('hset',KEYS[3],ARGV[3],ARGV[1])end " +
+            "if ARGV[4]~='' then redis.call('publish',KEYS[4],ARGV[4])end return 1");
+    /**
+     * KEYS: balances zset, total supply
+     * Sets the total supply to the sum of the balances, after the balances are replaced in bulk
+     */
+    static final RedisScript TOTAL_SUPPLY_SCRIPT = new RedisScript("local s=0 local b=redis.call('zrange',KEYS[1],0,-1,'WITHSCORES')" +
+            "for i=2,#b,2 do s=s+tonumber(b[i])end redis.call('set',KEYS[2],tostring(s))return tostring(s)");
     protected final CurrenciesManager currenciesManager;
 
     @Getter
     protected final String currencyName;
-    private final ConcurrentHashMap<UUID, Double> accounts;
-    private final ConcurrentHashMap<UUID, Double> maxPlayerBalances;
+    private final UUIDDoubleMap accounts;
+    private final UUIDDoubleMap maxPlayerBalances;
+    /**
+     * Cloud updates waiting for the write-behind window to expire
+     */
+    private final ConcurrentHashMap<UUID, PendingUpdate> pendingUpdates;
+    private final int writeBehindMillis;
+    private final boolean binaryUpdateMessages;
+    /**
+     * Balance updates waiting to be broadcast in the next batch frame
+     */
+    private final ConcurrentHashMap<UUID, BalanceUpdateFrame> outboundBatch;
+    private final AtomicBoolean batchScheduled;
+    private final int broadcastBatchMillis;
+    /**
+     * Last queued cloud update of each account, used to keep the updates of an account in order
+     */
+    private final ConcurrentHashMap<Object, CompletableFuture<?>> cloudUpdateChains;
+    /**
+     * Maximum offline accounts kept in memory, 0 if every account is loaded at startup
+     */
+    private final int lazyCacheSize;
+    private final int lazyLoadTimeoutMillis;
+    /**
+     * Access ordered accounts that can be evicted, only used with lazy loading
+     */
+    private final Map<UUID, Boolean> recentAccounts;
+    private final ConcurrentHashMap<UUID, CompletableFuture<Double>> loadingAccounts;
+    /**
+     * Local mirror of the top accounts, used by baltop and the top placeholders
+     */
+    @Getter
+    private final Leaderboard leaderboard;
+    private final AtomicBoolean leaderboardReloading;
+    /**
+     * Sum of the balances in memory, exact when every account is loaded
+     */
+    private final DoubleAdder totalSupply;
+    /**
+     * Last total supply read from Redis, used with lazy loading
+     */
+    private volatile double redisTotalSupply;
 
     private boolean enabled;
     @Getter
@@ -73,21 +159,50 @@ public class Currency implements Economy {
         this.transactionsTTL = currencySettings.getTransactionsTTL();
         this.transactionTax = currencySettings.getPayTax();
         this.taxOnlyPay = currencySettings.isTaxOnlyPay();
-        this.accounts = new ConcurrentHashMap<>();
-        this.maxPlayerBalances = new ConcurrentHashMap<>();
+        this.accounts = new UUIDDoubleMap();
+        this.maxPlayerBalances = new UUIDDoubleMap();
+        this.pendingUpdates = new ConcurrentHashMap<>();
+        this.cloudUpdateChains = new ConcurrentHashMap<>();
+        this.writeBehindMillis = RedisEconomyPlugin.getInstance().settings().balanceWriteBehindMillis;
+        this.binaryUpdateMessages = RedisEconomyPlugin.getInstance().settings().binaryUpdateMessages;
+        this.outboundBatch = new ConcurrentHashMap<>();
+        this.batchScheduled = new AtomicBoolean(false);
+        this.broadcastBatchMillis = RedisEconomyPlugin.getInstance().settings().balanceBroadcastBatchMillis;
+        this.lazyCacheSize = RedisEconomyPlugin.getInstance().settings().lazyAccountCacheSize;
+        this.lazyLoadTimeoutMillis = RedisEconomyPlugin.getInstance().settings().lazyAccountLoadTimeoutMillis;
+        this.recentAccounts = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Boolean> eldest) {
+                if (size() <= lazyCacheSize) return false;
+                //Accounts that can't be evicted yet stay tracked, moved to the end so they are checked last
+                final List<UUID> skipped = new ArrayList<>();
+                final Iterator<UUID> iterator = keySet().iterator();
+                while (size() > lazyCacheSize && iterator.hasNext()) {
+                    final UUID uuid = iterator.next();
+                    if (evictAccount(uuid)) iterator.remove();
+                    else skipped.add(uuid);
+                }
+                skipped.forEach(this::get);
+                return false;
+            }
+        });
+        this.loadingAccounts = new ConcurrentHashMap<>();
+        //The balancetop command shows up to 200 positions
+        this.leaderboard = new Leaderboard(Math.max(RedisEconomyPlugin.getInstance().settings().baltopPlaceholderAccounts, 200));
+        this.leaderboardReloading = new AtomicBoolean(false);
+        this.totalSupply = new DoubleAdder();
         this.decimalFormat = new DecimalFormat(
                 currencySettings.getDecimalFormat() != null ? currencySettings.getDecimalFormat() : "#.##",
                 new DecimalFormatSymbols(Locale.forLanguageTag(currencySettings.getLanguageTag() != null ? currencySettings.getLanguageTag() : "en-US"))
         );
 
-        getOrderedAccounts(-1).thenApply(result -> {
-            result.forEach(t ->
-                    accounts.put(UUID.fromString(t.getValue()), t.getScore()));
-            if (!accounts.isEmpty()) {
-                RedisEconomyPlugin.debug("start1 Loaded " + accounts.size() + " accounts for currency " + currencyName);
-            }
-            return result;
-        }).toCompletableFuture().join(); //Wait to avoid API calls before accounts are loaded
+        if (lazyCacheSize > 0) {
+            loadOnlineAccounts().toCompletableFuture().join();
+        } else {
+            loadAllAccounts().toCompletableFuture().join(); //Wait to avoid API calls before accounts are loaded
+        }
+        reloadLeaderboard();
+        initTotalSupply();
 
         getPlayerMaxBalances().thenApply(result -> {
             maxPlayerBalances.putAll(result);
@@ -110,8 +225,7 @@ public class Currency implements Economy {
                 Bukkit.getLogger().severe("Player name not found for UUID " + uuid);
                 return;
             }
-            updateAccountLocal(uuid, playerName, balance);
-            RedisEconomyPlugin.debug("01b Received balance update " + playerName + " to " + balance);
+            processBalanceUpdate(uuid, playerName, balance);
 
         } else if (channel.equals(RedisKeys.UPDATE_MAX_BAL_PREFIX.toString())) {
             double maxBal = Double.parseDouble(arguments[1]);
@@ -121,6 +235,62 @@ public class Currency implements Economy {
         }
     }
 
+    /**
+     * Apply a balance update received from another instance
+     *
+     * @param uuid       The UUID of the player
+     * @param playerName The name of the player, can be null if not sent
+     * @param balance    The new balance
+     */
+    public void processBalanceUpdate(@NotNull UUID uuid, @Nullable String playerName, double balance) {
+        updateRemoteAccountLocal(uuid, playerName, balance);
+        RedisEconomyPlugin.debug("01b Received balance update " + playerName + " to " + balance);
+    }
+
+    /**
+     * Apply a batch of balance updates received from another instance
+     *
+     * @param updates The balance updates
+     */
+    public void processBalanceUpdates(@NotNull List<BalanceUpdateFrame> updates) {
+        for (BalanceUpdateFrame update : updates) {
+            updateRemoteAccountLocal(update.uuid(), update.playerName(), update.balance());
+        }
+        RedisEconomyPlugin.debug("01b Received batch of " + updates.size() + " balance updates currency " + currencyName);
+    }
+
+    /**
+     * Queue a written balance into the next batch broadcast.
+     * The first update of a batch schedules the publication after the batch window
+     *
+     * @param uuid       The UUID of the player
+     * @param playerName The name of the player, can be null
+     * @param balance    The balance written on Redis
+     */
+    private void queueBroadcast(@NotNull UUID uuid, @Nullable String playerName, double balance) {
+        outboundBatch.merge(uuid, new BalanceUpdateFrame(0, 0, uuid, balance, playerName), (previous, next) ->
+                next.playerName() == null && previous.playerName() != null ?
+                        new BalanceUpdateFrame(0, 0, uuid, balance, previous.playerName()) : next);
+        if (batchScheduled.compareAndSet(false, true)) {
+            CompletableFuture.runAsync(this::flushBroadcast,
+                    CompletableFuture.delayedExecutor(broadcastBatchMillis, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private void flushBroadcast() {
+        batchScheduled.set(false);
+        final List<BalanceUpdateFrame> batch = new ArrayList<>(outboundBatch.size());
+        for (Map.Entry<UUID, BalanceUpdateFrame> entry : outboundBatch.entrySet()) {
+            if (outboundBatch.remove(entry.getKey(), entry.getValue()))
+                batch.add(entry.getValue());
+        }
+        if (batch.isEmpty()) return;
+        currenciesManager.getRedisManager().getBinaryConnectionAsync(commands ->
+                commands.publish(toBytes(RedisKeys.UPDATE_PLAYER_CHANNEL_PREFIX + currencyName),
+                        BalanceUpdateFrame.encodeBatch(RedisEconomyPlugin.getInstanceUUID(), batch))
+        ).thenAccept(receivers -> RedisEconomyPlugin.debugCache("01d Published batch of " + batch.size() + " updates to " + receivers + " instances currency " + currencyName));
+    }
+
     private List<ExecutorService> generateExecutors(int size) {
         if (size <= 0) return List.of(Executors.newSingleThreadExecutor(Thread.ofVirtual().factory()));
         List<ExecutorService> executors = new ArrayList<>();
@@ -196,11 +366,230 @@ public class Currency implements Economy {
     }
 
     public boolean hasAccount(@NotNull UUID playerUUID) {
-        return accounts.containsKey(playerUUID);
+        return ensureLoaded(playerUUID) == AccountState.LOADED;
     }
 
     public double getBalance(@NotNull UUID playerUUID) {
-        return accounts.getOrDefault(playerUUID, 0.0D);
+        ensureLoaded(playerUUID);
+        return accounts.get(playerUUID, 0.0D);
+    }
+
+    /**
+     * @return true if only online players and recently used accounts are kept in memory
+     */
+    public boolean isLazyLoading() {
+        return lazyCacheSize > 0;
+    }
+
+    /**
+     * Make sure the account is in memory.
+     * With lazy loading a missing account is read from Redis, waiting at most lazyAccountLoadTimeoutMillis.
+     * Redis I/O threads never wait: the reply would have to be delivered by the same thread
+     *
+     * @param uuid The UUID of the player
+     * @return If the account is in memory, doesn't exist, or could not be read in time
+     */
+    private AccountState ensureLoaded(@NotNull UUID uuid) {
+        if (accounts.containsKey(uuid)) {
+            if (lazyCacheSize > 0) touchAccount(uuid);
+            return AccountState.LOADED;
+        }
+        if (lazyCacheSize <= 0) return AccountState.MISSING;
+        final CompletableFuture<Double> load = loadAccount(uuid);
+        //Netty threads, including the ones completing Lettuce futures, are FastThreadLocalThreads
+        if (!load.isDone() && Thread.currentThread() instanceof FastThreadLocalThread) {
+            RedisEconomyPlugin.debugCache("WARN! Account " + uuid + " currency " + currencyName + " requested on a Redis thread, it will be available when Redis replies");
+            return AccountState.UNKNOWN;
+        }
+        try {
+            return load.get(lazyLoadTimeoutMillis, TimeUnit.MILLISECONDS) != null ? AccountState.LOADED : AccountState.MISSING;
+        } catch (TimeoutException e) {
+            RedisEconomyPlugin.debugCache("WARN! Timed out loading account " + uuid + " currency " + currencyName + ", it will be available when Redis replies");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            RedisEconomyPlugin.getInstance().getLogger().warning("Failed to load account " + uuid + " currency " + currencyName + ": " + e.getCause().getMessage());
+        }
+        return AccountState.UNKNOWN;
+    }
+
+    /**
+     * Read an account from Redis into memory. Concurrent loads of the same account share the same request
+     *
+     * @param uuid The UUID of the player
+     * @return The balance on Redis, null if the account doesn't exist
+     */
+    public CompletableFuture<Double> loadAccount(@NotNull UUID uuid) {
+        return loadingAccounts.computeIfAbsent(uuid, key -> {
+            final CompletableFuture<Double> load = getAccountRedis(key).thenApply(balance -> {
+                //An update received in the meantime is more recent than this read
+                if (balance != null && accounts.putIfAbsent(key, balance)) {
+                    touchAccount(key);
+                    RedisEconomyPlugin.debugCache("00l Loaded account " + key + " with balance " + balance + " currency " + currencyName);
+                }
+                return balance;
+            }).toCompletableFuture();
+            load.whenComplete((balance, throwable) -> loadingAccounts.remove(key, load));
+            return load;
+        });
+    }
+
+    /**
+     * Load the balances of the online players with a single ZMSCORE
+     */
+    private CompletionStage<Void> loadOnlineAccounts() {
+        final List<UUID> online = Bukkit.getOnlinePlayers().stream().map(OfflinePlayer::getUniqueId).toList();
+        if (online.isEmpty()) return CompletableFuture.completedFuture(null);
+        return currenciesManager.getRedisManager().getConnectionAsync(commands ->
+                commands.zmscore(RedisKeys.BALANCE_PREFIX + currencyName, online.stream().map(UUID::toString).toArray(String[]::new))
+        ).thenAccept(balances -> {
+            for (int i = 0; i < online.size(); i++) {
+                if (balances.get(i) != null) accounts.put(online.get(i), balances.get(i));
+            }
+            RedisEconomyPlugin.debug("start1 Loaded " + accounts.size() + " online accounts for currency " + currencyName);
+        });
+    }
+
+    /**
+     * Load every account paging through the balances with ZSCAN.
+     * Each element is decoded into the account store as it's streamed, so no page is kept in memory.
+     * A ZSCAN cursor must be followed in order, so the accounts are split by the first hex digit of their UUID
+     * and each part is scanned in parallel with its own MATCH cursor, one per pooled connection
+     */
+    private CompletionStage<Void> loadAllAccounts() {
+        final String key = RedisKeys.BALANCE_PREFIX + currencyName;
+        final int pageSize = RedisEconomyPlugin.getInstance().settings().accountLoadPageSize;
+        final AtomicInteger loadedPages = new AtomicInteger();
+        return currenciesManager.getRedisManager().getConnectionAsync(commands -> commands.zcard(key))
+                .thenCompose(total -> CompletableFuture.allOf(uuidPartitions(currenciesManager.getRedisManager().getPoolSize()).stream()
+                        .map(pattern -> scanBalances(key, ScanCursor.INITIAL, ScanArgs.Builder.limit(pageSize).match(pattern), scoredValue -> {
+                            //ZSCAN may return an element twice, the previous value keeps the total supply right
+                            final double previous = accounts.put(UUID.fromString(scoredValue.getValue()), scoredValue.getScore());
+                            totalSupply.add(scoredValue.getScore() - (Double.isNaN(previous) ? 0 : previous));
+                        }, page -> {
+                            if (loadedPages.incrementAndGet() % 10 == 0) {
+                                RedisEconomyPlugin.debug("start1 Loading accounts for currency " + currencyName + ": " + accounts.size() + "/" + total);
+                            }
+                        }, 1).thenAccept(pages -> loadedPages.incrementAndGet()).toCompletableFuture())
+                        .toArray(CompletableFuture[]::new)))
+                .thenAccept(v -> RedisEconomyPlugin.debug("start1 Loaded " + accounts.size() + " accounts in " + loadedPages.get() + " pages for currency " + currencyName));
+    }
+
+    /**
+     * Read every balance on Redis with ZSCAN, without loading the accounts in memory.
+     * Pages are read one after another and the consumer is called on the Redis threads as the page is decoded.
+     * ZSCAN may return an account twice
+     *
+     * @param consumer The consumer of the uuid and the balance of each account
+     * @return A CompletionStage that completes after the last page
+     */
+    public CompletionStage<Void> scanAccounts(@NotNull BiConsumer<UUID, Double> consumer) {
+        return scanBalances(RedisKeys.BALANCE_PREFIX + currencyName, ScanCursor.INITIAL,
+                ScanArgs.Builder.limit(RedisEconomyPlugin.getInstance().settings().accountLoadPageSize),
+                scoredValue -> consumer.accept(UUID.fromString(scoredValue.getValue()), scoredValue.getScore()), page -> {
+                }, 1).thenAccept(pages -> RedisEconomyPlugin.debug("Scanned " + pages + " pages of accounts for currency " + currencyName));
+    }
+
+    /**
+     * Split the UUIDs by their first hex digit
+     *
+     * @param partitions The number of parts, from 1 to 16
+     * @return A MATCH pattern for each part
+     */
+    private static List<String> uuidPartitions(int partitions) {
+        final String digits = "0123456789abcdef";
+        final int count = Math.clamp(partitions, 1, digits.length());
+        final List<StringBuilder> classes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) classes.add(new StringBuilder());
+        for (int i = 0; i < digits.length(); i++) classes.get(i % count).append(digits.charAt(i));
+        return classes.stream().map(digitClass -> "[" + digitClass + "]*").toList();
+    }
+
+    /**
+     * Page through a balances sorted set with ZSCAN, streaming every element to the channel
+     *
+     * @return The number of pages read
+     */
+    private CompletionStage<Integer> scanBalances(String key, ScanCursor cursor, ScanArgs scanArgs, ScoredValueStreamingChannel<String> channel, IntConsumer onPage, int page) {
+        //Pages are requested round-robin on the pooled connections
+        return currenciesManager.getRedisManager().getConnectionAsync(commands -> commands.zscan(channel, key, cursor, scanArgs)
+        ).thenCompose(nextCursor -> {
+            if (nextCursor.isFinished()) {
+                return CompletableFuture.completedFuture(page);
+            }
+            onPage.accept(page);
+            return scanBalances(key, nextCursor, scanArgs, channel, onPage, page + 1);
+        });
+    }
+
+    /**
+     * Read the total supply from Redis, computing it if the key doesn't exist yet
+     */
+    private void initTotalSupply() {
+        final String key = RedisKeys.TOTAL_SUPPLY_PREFIX + currencyName;
+        currenciesManager.getRedisManager().getConnectionAsync(commands -> commands.get(key))
+                .thenCompose(value -> {
+                    if (value != null) return CompletableFuture.completedFuture(Double.parseDouble(value));
+                    return computeTotalSupply().thenCompose(sum ->
+                            currenciesManager.getRedisManager().getConnectionAsync(commands -> commands.setnx(key, String.valueOf(sum))
+                                    .thenCompose(set -> set ? CompletableFuture.completedFuture(String.valueOf(sum)) : commands.get(key).toCompletableFuture())
+                            ).thenApply(Double::parseDouble));
+                }).thenAccept(value -> {
+                    redisTotalSupply = value;
+                    RedisEconomyPlugin.debug("start1 Total supply " + value + " for currency " + currencyName);
+                }).exceptionally(throwable -> {
+                    RedisEconomyPlugin.getInstance().getLogger().warning("Failed to initialize the total supply of currency " + currencyName + ": " + throwable.getMessage());
+                    return null;
+                });
+    }
+
+    private CompletionStage<Double> computeTotalSupply() {
+        if (lazyCacheSize <= 0) return CompletableFuture.completedFuture(totalSupply.sum());
+        final DoubleAdder sum = new DoubleAdder();
+        return scanBalances(RedisKeys.BALANCE_PREFIX + currencyName, ScanCursor.INITIAL,
+                ScanArgs.Builder.limit(RedisEconomyPlugin.getInstance().settings().accountLoadPageSize),
+                scoredValue -> sum.add(scoredValue.getScore()), page -> {
+                }, 1).thenApply(pages -> sum.sum());
+    }
+
+    /**
+     * Read the total supply kept on Redis. With lazy loading it's the value returned by getTotalSupply
+     */
+    public void refreshTotalSupply() {
+        currenciesManager.getRedisManager().getConnectionAsync(commands -> commands.get(RedisKeys.TOTAL_SUPPLY_PREFIX + currencyName))
+                .thenAccept(value -> {
+                    if (value != null) redisTotalSupply = Double.parseDouble(value);
+                });
+    }
+
+    /**
+     * Get the sum of every balance of this currency in O(1).
+     * With lazy loading it's the value on Redis as of the last refreshTotalSupply
+     *
+     * @return The total supply
+     */
+    public double getTotalSupply() {
+        return lazyCacheSize > 0 ? redisTotalSupply : totalSupply.sum();
+    }
+
+    /**
+     * Mark the account as recently used, so it's the last to be evicted
+     *
+     * @param uuid The UUID of the player
+     */
+    void touchAccount(@NotNull UUID uuid) {
+        if (lazyCacheSize <= 0) return;
+        recentAccounts.put(uuid, Boolean.TRUE);
+    }
+
+    /**
+     * @return false if the account must stay in memory: the player is online or an update is waiting
+     */
+    private boolean evictAccount(@NotNull UUID uuid) {
+        if (Bukkit.getPlayer(uuid) != null || pendingUpdates.containsKey(uuid)) return false;
+        accounts.remove(uuid);
+        RedisEconomyPlugin.debugCache("00e Evicted account " + uuid + " currency " + currencyName);
+        return true;
     }
 
     @Override
@@ -354,7 +743,7 @@ public class Currency implements Economy {
         UUID playerUUID = currenciesManager.getUUIDFromUsernameCache(playerName);
         if (playerUUID == null)
             return false;
-        return createPlayerAccount(playerUUID, playerName);
+        return createPlayerAccount(playerUUID, currenciesManager.getCaseSensitiveName(playerName));
     }
 
     @Override
@@ -363,11 +752,36 @@ public class Currency implements Economy {
     }
 
     public boolean createPlayerAccount(@NotNull UUID playerUUID, @Nullable String playerName) {
-        if (hasAccount(playerUUID))
+        //An account that could not be read may exist, creating it would overwrite its balance
+        if (ensureLoaded(playerUUID) != AccountState.MISSING)
             return false;
+        createAccount(playerUUID, playerName);
+        return true;
+    }
+
+    /**
+     * Load the account of a joining player, creating it if it doesn't exist on Redis.
+     * The calling thread is never blocked
+     *
+     * @param playerUUID The UUID of the player
+     * @param playerName The name of the player
+     * @return The balance on Redis, null if the account was created
+     */
+    public CompletionStage<Double> loadOrCreateAccount(@NotNull UUID playerUUID, @Nullable String playerName) {
+        return getAccountRedis(playerUUID).thenApply(balance -> {
+            if (balance != null) {
+                updateAccountLocal(playerUUID, playerName, balance);
+            } else if (!accounts.containsKey(playerUUID)) {
+                //Redis replied that the account doesn't exist, unlike a timed out read
+                createAccount(playerUUID, playerName);
+            }
+            return balance;
+        });
+    }
+
+    private void createAccount(@NotNull UUID playerUUID, @Nullable String playerName) {
         updateAccount(playerUUID, playerName, startingBalance);
         currenciesManager.getExchange().saveTransaction(new AccountID(playerUUID), new AccountID(), startingBalance, this, "Account creation");
-        return true;
     }
 
     @Override
@@ -384,10 +798,23 @@ public class Currency implements Economy {
         UUID playerUniqueId = currenciesManager.getUUIDFromUsernameCache(playerName);
         if (playerUniqueId == null)
             return new EconomyResponse(0, 0, EconomyResponse.ResponseType.FAILURE, "Player not found");
-        return withdrawPlayer(playerUniqueId, playerName, amount, reason);
+        return withdrawPlayer(playerUniqueId, currenciesManager.getCaseSensitiveName(playerName), amount, reason);
     }
 
-
+    /**
+     * Withdraw an amount from a player, plus the transaction tax
+     * <p>
+     * Redis checks the bounds atomically when it applies the change. Off the main thread the call waits for
+     * that verdict, up to the Redis timeout, and fails if Redis rejects the change.
+     * On the main thread only the local balance is checked, so a change made by another server in the last
+     * few milliseconds may still be rejected after SUCCESS is returned: the transaction is then marked as rejected
+     *
+     * @param playerUUID The UUID of the player
+     * @param playerName The name of the player, can be null if not known
+     * @param amount     The amount to withdraw
+     * @param reason     The reason of the transaction, null for the default one
+     * @return The result of the operation
+     */
     public EconomyResponse withdrawPlayer(@NotNull UUID playerUUID, @Nullable String playerName, double amount, @Nullable String reason) {
         if (!hasAccount(playerUUID))
             return new EconomyResponse(0, 0, EconomyResponse.ResponseType.FAILURE, "Account not found");
@@ -398,11 +825,28 @@ public class Currency implements Economy {
         if (!has(playerUUID, amountToWithdraw))
             return new EconomyResponse(amountToWithdraw, getBalance(playerUUID), EconomyResponse.ResponseType.FAILURE, "Insufficient funds");
 
-        updateAccount(playerUUID, playerName, getBalance(playerUUID) - amountToWithdraw);
-        currenciesManager.getExchange().saveTransaction(new AccountID(playerUUID), new AccountID(), -amountToWithdraw, this, reason == null ? "Withdraw" : reason);
+        final CompletionStage<Boolean> applied = updateAccountDelta(playerUUID, playerName, -amountToWithdraw,
+                currenciesManager.getExchange().saveTransaction(new AccountID(playerUUID), new AccountID(), -amountToWithdraw, this, reason == null ? "Withdraw" : reason));
+        if (!awaitDelta(applied))
+            return new EconomyResponse(amountToWithdraw, getBalance(playerUUID), EconomyResponse.ResponseType.FAILURE, "Insufficient funds");
         return new EconomyResponse(amount, getBalance(playerUUID), EconomyResponse.ResponseType.SUCCESS, null);
     }
 
+    /**
+     * Move an amount from a player to another, the sender also pays the transaction tax
+     * <p>
+     * Redis checks the bounds atomically when it applies the withdrawal. Off the main thread the call waits for
+     * that verdict, up to the Redis timeout, and fails if Redis rejects the withdrawal.
+     * On the main thread only the local balance is checked, so a change made by another server in the last
+     * few milliseconds may still be rejected after SUCCESS is returned:
+     * the receiver is then charged back and both transactions are marked as rejected
+     *
+     * @param sender   The UUID of the sender
+     * @param receiver The UUID of the receiver
+     * @param amount   The amount received
+     * @param reason   The reason of the transaction, null for the default one
+     * @return The result of the operation
+     */
     @SuppressWarnings("unused")
     public EconomyResponse payPlayer(@NotNull UUID sender, @NotNull UUID receiver, double amount, @Nullable String reason) {
         String senderName = currenciesManager.getUsernameFromUUIDCache(sender);
@@ -423,10 +867,15 @@ public class Currency implements Economy {
         if (getBalance(receiver) + amount > getPlayerMaxBalance(receiver))
             return new EconomyResponse(0, getBalance(receiver), EconomyResponse.ResponseType.FAILURE, "The receiver has reached the maximum balance");
 
-        updateAccount(sender, senderName, getBalance(sender) - amountToWithdraw);
-        currenciesManager.getExchange().saveTransaction(new AccountID(sender), new AccountID(receiver), -amountToWithdraw, this, reason == null ? "Payment" : reason);
-        updateAccount(sender, receiverName, getBalance(receiver) + amount);
-        currenciesManager.getExchange().saveTransaction(new AccountID(receiver), new AccountID(sender), amount, this, reason == null ? "Payment" : reason);
+        final CompletionStage<Boolean> withdrawn = updateAccountDelta(sender, senderName, -amountToWithdraw,
+                currenciesManager.getExchange().saveTransaction(new AccountID(sender), new AccountID(receiver), -amountToWithdraw, this, reason == null ? "Payment" : reason));
+        if (!awaitDelta(withdrawn))
+            return new EconomyResponse(0, getBalance(sender), EconomyResponse.ResponseType.FAILURE, "Insufficient funds");
+        final CompletionStage<Long> receiverTransaction = currenciesManager.getExchange().saveTransaction(new AccountID(receiver), new AccountID(sender), amount, this, reason == null ? "Payment" : reason);
+        withdrawn.thenAccept(applied -> {
+            if (!applied) cancelPayment(receiver, receiverName, amount, receiverTransaction);
+        });
+        updateAccountDelta(receiver, receiverName, amount, receiverTransaction);
 
         return new EconomyResponse(amount, getBalance(sender), EconomyResponse.ResponseType.SUCCESS, null);
     }
@@ -454,8 +903,13 @@ public class Currency implements Economy {
         if (getBalance(receiver) + amount > getPlayerMaxBalance(receiver))
             return new EconomyResponse(0, getBalance(receiver), EconomyResponse.ResponseType.FAILURE, "The receiver has reached the maximum balance");
 
-        updateAccount(sender, senderName, getBalance(sender) - amountToWithdraw);
-        updateAccount(receiver, receiverName, getBalance(receiver) + amount);
+        final CompletionStage<Boolean> withdrawn = updateAccountDelta(sender, senderName, -amountToWithdraw, null);
+        if (!awaitDelta(withdrawn))
+            return new EconomyResponse(0, getBalance(sender), EconomyResponse.ResponseType.FAILURE, "Insufficient funds");
+        withdrawn.thenAccept(applied -> {
+            if (!applied) cancelPayment(receiver, receiverName, amount, null);
+        });
+        updateAccountDelta(receiver, receiverName, amount, null);
 
         return new EconomyResponse(amount, getBalance(sender), EconomyResponse.ResponseType.SUCCESS, null);
     }
@@ -499,12 +953,13 @@ public class Currency implements Economy {
         String ownerName = transaction.getAccountIdentifier().isPlayer() ?//If the sender is a player
                 currenciesManager.getUsernameFromUUIDCache(transaction.getAccountIdentifier().getUUID()) : //Get the username from the cache (with server uuid translation)
                 transaction.getAccountIdentifier().toString(); //Else, it's a bank, so we get the bank id
+        final CompletionStage<Long> revertId = currenciesManager.getExchange().saveTransaction(transaction.getAccountIdentifier(), transaction.getActor(), -transaction.getAmount(), this, "Revert #" + transactionId + ": " + transaction.getReason());
         if (transaction.getAccountIdentifier().isPlayer()) {
-            updateAccount(transaction.getAccountIdentifier().getUUID(), ownerName, getBalance(transaction.getAccountIdentifier().getUUID()) - transaction.getAmount());
+            updateAccountDelta(transaction.getAccountIdentifier().getUUID(), ownerName, -transaction.getAmount(), revertId);
         }
         RedisEconomyPlugin.debug("revert01a reverted on account " + transaction.getAccountIdentifier() + " amount " + transaction.getAmount());
 
-        return currenciesManager.getExchange().saveTransaction(transaction.getAccountIdentifier(), transaction.getActor(), -transaction.getAmount(), this, "Revert #" + transactionId + ": " + transaction.getReason());
+        return revertId;
     }
 
     /**
@@ -518,16 +973,30 @@ public class Currency implements Economy {
         UUID playerUUID = currenciesManager.getUUIDFromUsernameCache(playerName);
         if (playerUUID == null)
             return new EconomyResponse(amount, 0, EconomyResponse.ResponseType.FAILURE, "Player not found");
-        return setPlayerBalance(playerUUID, playerName, amount);
+        return setPlayerBalance(playerUUID, currenciesManager.getCaseSensitiveName(playerName), amount);
     }
 
     public EconomyResponse depositPlayer(@NotNull String playerName, double amount, @Nullable String reason) {
         UUID playerUUID = currenciesManager.getUUIDFromUsernameCache(playerName);
         if (playerUUID == null)
             return new EconomyResponse(amount, 0, EconomyResponse.ResponseType.FAILURE, "Player not found");
-        return depositPlayer(playerUUID, playerName, amount, reason);
+        return depositPlayer(playerUUID, currenciesManager.getCaseSensitiveName(playerName), amount, reason);
     }
 
+    /**
+     * Deposit an amount to a player
+     * <p>
+     * Redis checks the bounds atomically when it applies the change. Off the main thread the call waits for
+     * that verdict, up to the Redis timeout, and fails if Redis rejects the change.
+     * On the main thread only the local balance is checked, so a change made by another server in the last
+     * few milliseconds may still be rejected after SUCCESS is returned: the transaction is then marked as rejected
+     *
+     * @param playerUUID The UUID of the player
+     * @param playerName The name of the player, can be null if not known
+     * @param amount     The amount to deposit
+     * @param reason     The reason of the transaction, null for the default one
+     * @return The result of the operation
+     */
     public EconomyResponse depositPlayer(@NotNull UUID playerUUID, @Nullable String playerName, double amount, String reason) {
         if (!hasAccount(playerUUID))
             return new EconomyResponse(0, 0, EconomyResponse.ResponseType.FAILURE, "Account not found");
@@ -538,8 +1007,10 @@ public class Currency implements Economy {
         if (getBalance(playerUUID) + amount > getPlayerMaxBalance(playerUUID))
             return new EconomyResponse(0, getBalance(playerUUID), EconomyResponse.ResponseType.FAILURE, "The player has reached the maximum balance");
 
-        updateAccount(playerUUID, playerName, getBalance(playerUUID) + amount);
-        currenciesManager.getExchange().saveTransaction(new AccountID(playerUUID), new AccountID(), amount, this, reason == null ? "Deposit" : reason);
+        final CompletionStage<Boolean> applied = updateAccountDelta(playerUUID, playerName, amount,
+                currenciesManager.getExchange().saveTransaction(new AccountID(playerUUID), new AccountID(), amount, this, reason == null ? "Deposit" : reason));
+        if (!awaitDelta(applied))
+            return new EconomyResponse(0, getBalance(playerUUID), EconomyResponse.ResponseType.FAILURE, "The player has reached the maximum balance");
         return new EconomyResponse(amount, getBalance(playerUUID), EconomyResponse.ResponseType.SUCCESS, null);
     }
 
@@ -553,37 +1024,301 @@ public class Currency implements Economy {
     public void updateAccountLocal(@NotNull UUID uuid, @Nullable String playerName, double balance) {
         if (playerName != null)
             currenciesManager.updateNameUniqueId(playerName, uuid);
-        accounts.put(uuid, balance);
+        final double previous = accounts.put(uuid, balance);
+        totalSupply.add(balance - (Double.isNaN(previous) ? 0 : previous));
+        touchAccount(uuid);
+        updateLeaderboard(uuid, balance);
+    }
+
+    /**
+     * Update the balance on local memory with a change made by another instance.
+     * With lazy loading, accounts that are not in memory are not loaded by remote updates
+     *
+     * @param uuid       The UUID of the player
+     * @param playerName The name of the player, can be null if not known
+     * @param balance    The new balance
+     */
+    private void updateRemoteAccountLocal(@NotNull UUID uuid, @Nullable String playerName, double balance) {
+        if (lazyCacheSize > 0 && !accounts.containsKey(uuid)) {
+            if (playerName != null)
+                currenciesManager.updateNameUniqueId(playerName, uuid);
+            updateLeaderboard(uuid, balance);
+            return;
+        }
+        updateAccountLocal(uuid, playerName, balance);
     }
 
     protected void updateAccount(@NotNull UUID uuid, @Nullable String playerName, double balance) {
-        updateAccountCloudCache(uuid, playerName, balance, 0);
+        if (writeBehindMillis > 0) {
+            queueCloudUpdate(uuid, new PendingUpdate(playerName, true, balance, List.of()));
+        } else {
+            updateAccountCloudCache(uuid, playerName, balance, 0);
+        }
         updateAccountLocal(uuid, playerName, balance);
     }
 
-    private synchronized void updateAccountCloudCache(@NotNull UUID uuid, @Nullable String playerName, double balance, int tries) {
-        CompletableFuture.supplyAsync(() -> {
-            RedisEconomyPlugin.debugCache("01a Starting update account " + playerName + " to " + balance + " currency " + currencyName);
+    private void updateLeaderboard(@NotNull UUID uuid, double balance) {
+        if (!leaderboard.update(uuid, balance)) reloadLeaderboard();
+    }
 
-            currenciesManager.getRedisManager().executeTransaction(reactiveCommands -> {
-                reactiveCommands.zadd(RedisKeys.BALANCE_PREFIX + currencyName, balance, uuid.toString());
-                if (playerName != null)
-                    reactiveCommands.hset(RedisKeys.NAME_UUID.toString(), playerName, uuid.toString());
-                reactiveCommands.publish(RedisKeys.UPDATE_PLAYER_CHANNEL_PREFIX + currencyName,
-                        RedisEconomyPlugin.getInstanceUUID().toString() + ";;" + uuid + ";;" + playerName + ";;" + balance);
-                RedisEconomyPlugin.debugCache("01b Publishing update account " + playerName + " to " + balance + " currency " + currencyName);
+    /**
+     * Reload the leaderboard mirror from Redis, if a reload is not already running
+     */
+    public void reloadLeaderboard() {
+        if (!leaderboardReloading.compareAndSet(false, true)) return;
+        getOrderedAccounts(leaderboard.getTrackedSize() - 1)
+                .thenAccept(topAccounts -> {
+                    leaderboard.load(topAccounts);
+                    RedisEconomyPlugin.debugCache("00t Reloaded leaderboard with " + topAccounts.size() + " accounts currency " + currencyName);
+                }).whenComplete((result, throwable) -> {
+                    leaderboardReloading.set(false);
+                    if (throwable != null)
+                        RedisEconomyPlugin.getInstance().getLogger().warning("Failed to reload the leaderboard of currency " + currencyName + ": " + throwable.getMessage());
+                });
+    }
+
+    /**
+     * Queue a cloud update into the write-behind window of the account.
+     * Updates of the same account inside the window are collapsed into a single Redis write
+     *
+     * @param uuid   The UUID of the player
+     * @param update The update to queue
+     */
+    private void queueCloudUpdate(@NotNull UUID uuid, @NotNull PendingUpdate update) {
+        final boolean[] firstUpdate = {false};
+        pendingUpdates.compute(uuid, (key, previous) -> {
+            if (previous != null) return previous.merge(update);
+            firstUpdate[0] = true;
+            return update;
+        });
+        //Only the update that opened the window schedules the flush
+        if (firstUpdate[0]) {
+            CompletableFuture.runAsync(() -> flushPendingUpdate(uuid),
+                    CompletableFuture.delayedExecutor(writeBehindMillis, TimeUnit.MILLISECONDS, getExecutor((int) uuid.getMostSignificantBits())));
+        }
+    }
 
-            }).ifPresentOrElse(result -> {
-                RedisEconomyPlugin.debugCache("01c Sent update account successfully " + playerName + " to " + balance + " currency " + currencyName);
-            }, () -> handleException(uuid, playerName, balance, tries, null));
+    private void flushPendingUpdate(@NotNull UUID uuid) {
+        final PendingUpdate update = pendingUpdates.remove(uuid);
+        if (update == null) return;
+        RedisEconomyPlugin.debugCache("01w Flushing write-behind update account " + update.playerName() + " currency " + currencyName);
+        if (update.absolute()) {
+            updateAccountCloudCache(uuid, update.playerName(), update.value(), 0);
+        } else {
+            updateAccountDeltaCloudCache(uuid, update.playerName(), update.value(), update.transactionIds());
+        }
+    }
 
-            return null;
-        }, getExecutor((int) uuid.getMostSignificantBits())).orTimeout(10, TimeUnit.SECONDS).exceptionally(throwable -> {
+    /**
+     * Send all the updates that are waiting for their write-behind window
+     *
+     * @return A CompletableFuture that completes when every cloud update sent so far has completed
+     */
+    public CompletableFuture<Void> flushPendingUpdates() {
+        pendingUpdates.keySet().forEach(this::flushPendingUpdate);
+        return CompletableFuture.allOf(cloudUpdateChains.values().stream()
+                .map(chain -> chain.exceptionally(throwable -> null))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    private void updateAccountCloudCache(@NotNull UUID uuid, @Nullable String playerName, double balance, int tries) {
+        chainCloudUpdate(uuid, () -> {
+            RedisEconomyPlugin.debugCache("01a Starting update account " + playerName + " to " + balance + " currency " + currencyName);
+
+            final String[] keys = new String[]{
+                    RedisKeys.BALANCE_PREFIX + currencyName,
+                    RedisKeys.TOTAL_SUPPLY_PREFIX + currencyName,
+                    RedisKeys.NAME_UUID.toString(),
+                    RedisKeys.UPDATE_PLAYER_CHANNEL_PREFIX + currencyName};
+            //The script publishes the update itself, so nothing is published if it didn't run
+            if (binaryUpdateMessages && broadcastBatchMillis <= 0) {
+                RedisEconomyPlugin.debugCache("01b Publishing binary update account " + playerName + " to " + balance + " currency " + currencyName);
+                return currenciesManager.getRedisManager().getBinaryConnectionAsync(commands -> SET_BALANCE_SCRIPT.<byte[], byte[], Long>eval(commands,
+                        ScriptOutputType.INTEGER,
+                        toBytes(keys),
+                        toBytes(uuid.toString()),
+                        toBytes(String.valueOf(balance)),
+                        toBytes(playerName == null ? "" : playerName),
+                        BalanceUpdateFrame.encode(RedisEconomyPlugin.getInstanceUUID(), uuid, balance, playerName)));
+            }
+            if (broadcastBatchMillis <= 0)
+                RedisEconomyPlugin.debugCache("01b Publishing update account " + playerName + " to " + balance + " currency " + currencyName);
+            return currenciesManager.getRedisManager().getConnectionAsync(commands -> SET_BALANCE_SCRIPT.<String, String, Long>eval(commands,
+                    ScriptOutputType.INTEGER,
+                    keys,
+                    uuid.toString(),
+                    String.valueOf(balance),
+                    playerName == null ? "" : playerName,
+                    //With batching the update is published with the next batch after the write succeeds
+                    broadcastBatchMillis > 0 ? "" : RedisEconomyPlugin.getInstanceUUID().toString() + ";;" + uuid + ";;" + playerName + ";;" + balance));
+        }).thenAccept(result -> {
+            RedisEconomyPlugin.debugCache("01c Sent update account successfully " + playerName + " to " + balance + " currency " + currencyName);
+            if (broadcastBatchMillis > 0)
+                queueBroadcast(uuid, playerName, balance);
+        }).exceptionally(throwable -> {
             handleException(uuid, playerName, balance, tries, new Exception(throwable));
             return null;
         });
     }
 
+    /**
+     * Queue a cloud update after the previous updates of the same account.
+     * No thread is blocked while waiting: every update is started on the executor of the account
+     * when the previous one completes, never on the calling thread
+     *
+     * @param accountKey The account identifier (player UUID or bank id)
+     * @param update     The supplier that starts the update
+     * @param <T>        The result type of the update
+     * @return The CompletableFuture of the update
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> CompletableFuture<T> chainCloudUpdate(@NotNull Object accountKey, @NotNull Supplier<CompletionStage<T>> update) {
+        final ExecutorService executor = getExecutor(accountKey instanceof UUID uuid ? (int) uuid.getMostSignificantBits() : accountKey.hashCode());
+        final CompletableFuture<T> next = (CompletableFuture<T>) cloudUpdateChains.compute(accountKey, (key, previous) ->
+                (previous == null ? CompletableFuture.completedFuture(null) : previous.exceptionally(throwable -> null))
+                        .thenComposeAsync(v -> update.get().toCompletableFuture().orTimeout(10, TimeUnit.SECONDS), executor));
+        next.whenComplete((result, throwable) -> cloudUpdateChains.remove(accountKey, next));
+        return next;
+    }
+
+    /**
+     * Apply a relative change to the balance.
+     * The local cache is updated optimistically, then Redis applies the delta atomically
+     * (bounds are checked server-side) and the authoritative balance is written back to the local cache.
+     * Only deltas that the bounds check can't reject wait in the write-behind window,
+     * the others are sent on their own after the queued update so each one is accepted or rejected individually.
+     * If Redis rejects the delta, the transaction that recorded it is marked as rejected
+     *
+     * @param uuid          The UUID of the player
+     * @param playerName    The name of the player, can be null if not known
+     * @param delta         The amount to add (negative to subtract)
+     * @param transactionId The id of the transaction that records the change, can be null if none was saved
+     * @return A CompletionStage that completes with false if Redis rejected the delta
+     */
+    protected CompletionStage<Boolean> updateAccountDelta(@NotNull UUID uuid, @Nullable String playerName, double delta, @Nullable CompletionStage<Long> transactionId) {
+        updateAccountLocal(uuid, playerName, getBalance(uuid) + delta);
+        final List<CompletionStage<Long>> transactionIds = transactionId == null ? List.of() : List.of(transactionId);
+        if (writeBehindMillis <= 0) {
+            return updateAccountDeltaCloudCache(uuid, playerName, delta, transactionIds);
+        } else if (delta >= 0 && getPlayerMaxBalance(uuid) == Double.POSITIVE_INFINITY) {
+            queueCloudUpdate(uuid, new PendingUpdate(playerName, false, delta, transactionIds));
+            //The bounds check can't reject it
+            return CompletableFuture.completedStage(true);
+        }
+        flushPendingUpdate(uuid);
+        return updateAccountDeltaCloudCache(uuid, playerName, delta, transactionIds);
+    }
+
+    /**
+     * Wait for the verdict of Redis on a delta, if the calling thread can wait for it.
+     * The main thread would stall the server and a Redis thread would never receive the reply, so they don't wait
+     *
+     * @param applied The result of {@link #updateAccountDelta}
+     * @return false only if Redis rejected the delta
+     */
+    private boolean awaitDelta(@NotNull CompletionStage<Boolean> applied) {
+        if (Bukkit.isPrimaryThread() || Thread.currentThread() instanceof FastThreadLocalThread) return true;
+        try {
+            return applied.toCompletableFuture().get(RedisEconomyPlugin.getInstance().settings().redis.timeout(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            //The delta may still be applied, if it is rejected later its transaction is marked
+            RedisEconomyPlugin.debugCache("WARN! No reply to a delta update currency " + currencyName + ": " + e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Take back the amount credited by a payment whose withdrawal was rejected by Redis
+     *
+     * @param receiver            The UUID of the receiver
+     * @param receiverName        The name of the receiver, can be null if not known
+     * @param amount              The amount credited to the receiver
+     * @param receiverTransaction The id of the transaction of the receiver, can be null if none was saved
+     */
+    private void cancelPayment(@NotNull UUID receiver, @Nullable String receiverName, double amount, @Nullable CompletionStage<Long> receiverTransaction) {
+        updateAccountDelta(receiver, receiverName, -amount, null).thenAccept(applied -> {
+            if (!applied) {
+                RedisEconomyPlugin.getInstance().getLogger().warning("Failed to take back " + amount + " from " + receiverName + " after the payment was rejected, currency " + currencyName);
+                return;
+            }
+            if (receiverTransaction != null)
+                receiverTransaction.thenAccept(id -> currenciesManager.getExchange().rejectTransaction(new AccountID(receiver), id));
+        });
+    }
+
+    /**
+     * @param uuid   The UUID of the player
+     * @param update The cloud update of the account
+     * @return true if no other update of the account was queued or chained after the given one
+     */
+    private boolean isLastCloudUpdate(@NotNull UUID uuid, @NotNull CompletableFuture<?> update) {
+        final CompletableFuture<?> last = cloudUpdateChains.get(uuid);
+        return (last == null || last == update) && !pendingUpdates.containsKey(uuid);
+    }
+
+    private CompletionStage<Boolean> updateAccountDeltaCloudCache(@NotNull UUID uuid, @Nullable String playerName, double delta, @NotNull List<CompletionStage<Long>> transactionIds) {
+        final CompletableFuture<List<Object>> update = chainCloudUpdate(uuid, () -> {
+            RedisEconomyPlugin.debugCache("01a Starting delta update account " + playerName + " by " + delta + " currency " + currencyName);
+
+            final String[] keys = new String[]{
+                    RedisKeys.BALANCE_PREFIX + currencyName,
+                    RedisKeys.MAX_PLAYER_BALANCES + currencyName,
+                    RedisKeys.NAME_UUID.toString(),
+                    RedisKeys.UPDATE_PLAYER_CHANNEL_PREFIX + currencyName,
+                    RedisKeys.TOTAL_SUPPLY_PREFIX + currencyName};
+            if (binaryUpdateMessages && broadcastBatchMillis <= 0) {
+                return currenciesManager.getRedisManager().getBinaryConnectionAsync(commands -> DELTA_SCRIPT.<byte[], byte[], List<Object>>eval(commands,
+                        ScriptOutputType.MULTI,
+                        toBytes(keys),
+                        toBytes(uuid.toString()),
+                        toBytes(String.valueOf(delta)),
+                        toBytes(String.valueOf(maxBalance)),
+                        toBytes(playerName == null ? "" : playerName),
+                        BalanceUpdateFrame.encodeHeader(RedisEconomyPlugin.getInstanceUUID(), uuid),
+                        toBytes(playerName == null ? "" : playerName)));
+            }
+            return currenciesManager.getRedisManager().getConnectionAsync(commands -> DELTA_SCRIPT.<String, String, List<Object>>eval(commands,
+                    ScriptOutputType.MULTI,
+                    keys,
+                    uuid.toString(),
+                    String.valueOf(delta),
+                    String.valueOf(maxBalance),
+                    playerName == null ? "" : playerName,
+                    //With batching the update is published with the next batch
+                    broadcastBatchMillis > 0 ? "" : RedisEconomyPlugin.getInstanceUUID().toString() + ";;" + uuid + ";;" + playerName + ";;"));
+        });
+        return update.thenApply(result -> {
+            //Binary connections reply with byte arrays
+            final Object balanceReply = result.get(1);
+            final double balance = Double.parseDouble(balanceReply instanceof byte[] bytes ?
+                    new String(bytes, StandardCharsets.UTF_8) : (String) balanceReply);
+            final boolean applied = (Long) result.get(0) != 0;
+            if (!applied) {
+                RedisEconomyPlugin.debugCache("WARN! Delta update of " + delta + " rejected for account " + playerName + ", balance is " + balance + " currency " + currencyName);
+                transactionIds.forEach(transactionId -> transactionId.thenAccept(id ->
+                        currenciesManager.getExchange().rejectTransaction(new AccountID(uuid), id)));
+            } else {
+                RedisEconomyPlugin.debugCache("01c Sent delta update account successfully " + playerName + " to " + balance + " currency " + currencyName);
+                if (broadcastBatchMillis > 0)
+                    queueBroadcast(uuid, playerName, balance);
+            }
+            //Redis holds the authoritative balance, unless later updates already changed the local one: their replies will carry it
+            if (isLastCloudUpdate(uuid, update))
+                updateAccountLocal(uuid, null, balance);
+            return applied;
+        }).exceptionally(throwable -> {
+            //Deltas are not idempotent, so they are not retried: a timed out script may have been applied already
+            final RedisEconomyPlugin plugin = RedisEconomyPlugin.getInstance();
+            plugin.getLogger().warning("Failed to apply delta " + delta + " on account " + playerName + " currency " + currencyName + ": " + throwable.getMessage());
+            getAccountRedis(uuid).thenAccept(balance -> {
+                if (balance != null && isLastCloudUpdate(uuid, update)) updateAccountLocal(uuid, null, balance);
+            });
+            return true;
+        });
+    }
+
     private void handleException(@NotNull UUID uuid, @Nullable String playerName, double balance, int tries, @Nullable Exception e) {
         final RedisEconomyPlugin plugin = RedisEconomyPlugin.getInstance();
         if (tries < plugin.settings().redis.getTryAgainCount()) {
@@ -615,7 +1350,7 @@ public class Currency implements Economy {
      * @return The executor to use
      */
     protected ExecutorService getExecutor(int identifier) {
-        return updateExecutors.get((Math.abs(identifier) % updateExecutors.size()));
+        return updateExecutors.get(Math.floorMod(identifier, updateExecutors.size()));
     }
 
 
@@ -634,6 +1369,9 @@ public class Currency implements Economy {
 
             commands.zadd(RedisKeys.BALANCE_PREFIX + currencyName, balancesArray);
             commands.hset(RedisKeys.NAME_UUID.toString(), nameUUIDs);
+            //EVAL with the source, a NOSCRIPT error inside MULTI would only be reported by EXEC
+            commands.eval(TOTAL_SUPPLY_SCRIPT.getSource(), ScriptOutputType.VALUE,
+                    RedisKeys.BALANCE_PREFIX + currencyName, RedisKeys.TOTAL_SUPPLY_PREFIX + currencyName);
         }).ifPresent(result -> {
             Bukkit.getLogger().info("migration01 updated balances into " + RedisKeys.BALANCE_PREFIX + currencyName + " accounts. result " + result.get(0));
             Bukkit.getLogger().info("migration02 updated nameuuids into " + RedisKeys.NAME_UUID + " accounts. result " + result.get(1));
@@ -655,8 +1393,53 @@ public class Currency implements Economy {
 
     }
 
+    /**
+     * Get the position of an account in the leaderboard.
+     * Positions in the local leaderboard are answered from memory, the others with ZREVRANK
+     *
+     * @param uuid The UUID of the account
+     * @return The 1-based rank, or null if the account doesn't exist
+     */
+    public CompletionStage<Long> getRank(@NotNull UUID uuid) {
+        final int rank = leaderboard.snapshot().rank(uuid);
+        if (rank != -1) return CompletableFuture.completedFuture((long) rank);
+        return currenciesManager.getRedisManager().getConnectionAsync(commands ->
+                commands.zrevrank(RedisKeys.BALANCE_PREFIX + currencyName, uuid.toString())
+        ).thenApply(zeroBasedRank -> zeroBasedRank == null ? null : zeroBasedRank + 1);
+    }
+
+    /**
+     * Get a page of the leaderboard.
+     * Pages inside the local leaderboard are answered from memory, the others with a ZREVRANGE
+     * of the page only, pipelined with a ZCARD for the total.
+     * The ZCARD is skipped when the local leaderboard holds every account
+     *
+     * @param page     1-based page number
+     * @param pageSize The positions per page
+     * @return The positions of the page and the number of accounts
+     */
+    public CompletionStage<Leaderboard.Page> getLeaderboardPage(int page, int pageSize) {
+        final long offset = (long) (Math.max(page, 1) - 1) * pageSize;
+        final Leaderboard.Snapshot snapshot = leaderboard.snapshot();
+        if (snapshot.complete()) {
+            return CompletableFuture.completedFuture(new Leaderboard.Page(snapshot.page(page, pageSize), snapshot.top().size()));
+        }
+        final String key = RedisKeys.BALANCE_PREFIX + currencyName;
+        if (offset + pageSize <= snapshot.top().size()) {
+            return currenciesManager.getRedisManager().getConnectionAsync(commands -> commands.zcard(key))
+                    .thenApply(total -> new Leaderboard.Page(snapshot.page(page, pageSize), total));
+        }
+        return currenciesManager.getRedisManager().getConnectionPipeline(commands -> {
+            final CompletionStage<Long> total = commands.zcard(key);
+            return commands.zrevrangeWithScores(key, offset, offset + pageSize - 1)
+                    .thenCombine(total, (scoredValues, count) -> new Leaderboard.Page(scoredValues.stream()
+                            .map(scoredValue -> new Leaderboard.Position(UUID.fromString(scoredValue.getValue()), scoredValue.getScore()))
+                            .toList(), count));
+        });
+    }
+
     public double getPlayerMaxBalance(UUID uuid) {
-        return maxPlayerBalances.getOrDefault(uuid, maxBalance);
+        return maxPlayerBalances.get(uuid, maxBalance);
     }
 
     public void setPlayerMaxBalance(UUID uuid, double maxAmount) {
@@ -709,7 +1492,43 @@ public class Currency implements Economy {
      */
     @SuppressWarnings("unused")
     public final Map<UUID, Double> getAccounts() {
-        return Collections.unmodifiableMap(accounts);
+        return accounts.asMap();
+    }
+
+    private static byte[] toBytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[][] toBytes(String[] strings) {
+        final byte[][] bytes = new byte[strings.length][];
+        for (int i = 0; i < strings.length; i++) {
+            bytes[i] = toBytes(strings[i]);
+        }
+        return bytes;
+    }
+
+    private enum AccountState {
+        LOADED, MISSING, UNKNOWN
+    }
+
+    /**
+     * A cloud update waiting to be written.
+     * Queued deltas can't be rejected by the bounds check, so their sum is accepted as each one would be
+     *
+     * @param playerName The latest known name of the player, can be null
+     * @param absolute   If true the value is the new balance, otherwise it is a delta
+     * @param value          The balance or the delta
+     * @param transactionIds The ids of the transactions that recorded the queued deltas
+     */
+    private record PendingUpdate(@Nullable String playerName, boolean absolute, double value,
+                                 @NotNull List<CompletionStage<Long>> transactionIds) {
+        private PendingUpdate merge(PendingUpdate next) {
+            final String name = next.playerName != null ? next.playerName : playerName;
+            //An absolute balance overrides everything before it, deltas accumulate
+            if (next.absolute) return new PendingUpdate(name, true, next.value, List.of());
+            return new PendingUpdate(name, absolute, value + next.value,
+                    Stream.concat(transactionIds.stream(), next.transactionIds.stream()).toList());
+        }
     }
 
     /**
@@ -15,10 +15,8 @@ import org.jetbrains.annotations.Nullable;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
 
 import static dev.unnm3d.rediseconomy.redis.RedisKeys.*;
 
@@ -244,15 +242,16 @@ public class CurrencyWithBanks extends Currency {
         String ownerName = transaction.getAccountIdentifier().isPlayer() ?//If the sender is a player
                 currenciesManager.getUsernameFromUUIDCache(transaction.getAccountIdentifier().getUUID()) : //Get the username from the cache (with server uuid translation)
                 transaction.getAccountIdentifier().toString(); //Else, it's a bank, so we get the bank id
+        final CompletionStage<Long> revertId = currenciesManager.getExchange().saveTransaction(transaction.getAccountIdentifier(), transaction.getActor(), -transaction.getAmount(), this, "Revert #" + transactionId + ": " + transaction.getReason());
         if (transaction.getAccountIdentifier().isPlayer()) {//Update player account
-            updateAccount(transaction.getAccountIdentifier().getUUID(), ownerName, getBalance(transaction.getAccountIdentifier().getUUID()) - transaction.getAmount());
+            updateAccountDelta(transaction.getAccountIdentifier().getUUID(), ownerName, -transaction.getAmount(), revertId);
         } else {//Update bank account
             double bankBalance = bankAccounts.getOrDefault(transaction.getAccountIdentifier().toString(), 0.0D);
             updateBankAccount(transaction.getAccountIdentifier().toString(), bankBalance - transaction.getAmount());
         }
         RedisEconomyPlugin.debug("revert01a reverted on account " + transaction.getAccountIdentifier() + " amount " + transaction.getAmount());
 
-        return currenciesManager.getExchange().saveTransaction(transaction.getAccountIdentifier(), transaction.getActor(), -transaction.getAmount(), this, "Revert #" + transactionId + ": " + transaction.getReason());
+        return revertId;
     }
 
     private void setOwner(@NotNull String accountId, UUID ownerUUID) {
@@ -275,22 +274,20 @@ public class CurrencyWithBanks extends Currency {
         updateBankAccountLocal(accountId, balance);
     }
 
-    private synchronized void updateBankAccountCloudCache(@NotNull String accountId, double balance, int tries) {
-        CompletableFuture.supplyAsync(() -> {
+    private void updateBankAccountCloudCache(@NotNull String accountId, double balance, int tries) {
+        chainCloudUpdate(accountId, () -> {
             RedisEconomyPlugin.debugCache("01a Starting update bank account " + accountId + " to " + balance + " currency " + currencyName);
 
-            currenciesManager.getRedisManager().executeTransaction(reactiveCommands -> {
-                reactiveCommands.zadd(BALANCE_BANK_PREFIX + currencyName, balance, accountId);
-                reactiveCommands.publish(UPDATE_BANK_CHANNEL_PREFIX + currencyName,
+            return currenciesManager.getRedisManager().executeTransactionAsync(asyncCommands -> {
+                asyncCommands.zadd(BALANCE_BANK_PREFIX + currencyName, balance, accountId);
+                asyncCommands.publish(UPDATE_BANK_CHANNEL_PREFIX + currencyName,
                         RedisEconomyPlugin.getInstanceUUID().toString() + ";;" + accountId + ";;" + balance);
                 RedisEconomyPlugin.debugCache("01b Publishing update bank account " + accountId + " to " + balance + " currency " + currencyName);
-
-            }).ifPresentOrElse(result -> {
-                RedisEconomyPlugin.debugCache("01c Sent bank update account " + accountId + " to " + balance);
-            }, () -> handleException(accountId, balance, tries, null));
-
-            return null;
-        }, getExecutor(accountId.getBytes()[accountId.length() - 1])).orTimeout(10, TimeUnit.SECONDS).exceptionally(throwable -> {
+            });
+        }).thenAccept(result -> result.ifPresentOrElse(r ->
+                        RedisEconomyPlugin.debugCache("01c Sent bank update account " + accountId + " to " + balance),
+                () -> handleException(accountId, balance, tries, null))
+        ).exceptionally(throwable -> {
             handleException(accountId, balance, tries, new Exception(throwable));
             return null;
         });
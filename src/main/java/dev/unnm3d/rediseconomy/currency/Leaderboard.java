@@ -0,0 +1,188 @@
+package dev.unnm3d.rediseconomy.currency;
+
+import io.lettuce.core.ScoredValue;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Local mirror of the top accounts of a currency, kept in order by the balance updates.
+ * <p>
+ * Only the top accounts are tracked, with some headroom. Every account outside the mirror has a balance
+ * not greater than the cutoff, so the mirror stays exact until a tracked account drops below it:
+ * then it must be reloaded from Redis.
+ * Readers get an immutable {@link Snapshot}, rebuilt only when the mirror changed since the last one
+ */
+public class Leaderboard {
+    private static final Comparator<Position> ORDER = Comparator.comparingDouble(Position::balance).reversed()
+            .thenComparing(Position::uuid);
+
+    private final int size;
+    private final int trackedSize;
+    private final TreeSet<Position> positions;
+    private final HashMap<UUID, Position> index;
+    private double cutoff;
+    private boolean stale;
+    private volatile boolean dirty;
+    private volatile Snapshot snapshot;
+
+    /**
+     * @param size The number of positions readers can access
+     */
+    public Leaderboard(int size) {
+        this.size = size;
+        this.trackedSize = size * 2;
+        this.positions = new TreeSet<>(ORDER);
+        this.index = new HashMap<>();
+        this.cutoff = Double.NEGATIVE_INFINITY;
+        this.stale = true;
+        this.snapshot = new Snapshot(List.of(), Map.of(), false);
+    }
+
+    /**
+     * @return How many accounts must be loaded from Redis to fill the mirror
+     */
+    public int getTrackedSize() {
+        return trackedSize;
+    }
+
+    /**
+     * Replace the mirror with the top accounts read from Redis
+     *
+     * @param topAccounts The first getTrackedSize() accounts ordered by balance
+     */
+    public synchronized void load(@NotNull List<ScoredValue<String>> topAccounts) {
+        positions.clear();
+        index.clear();
+        for (ScoredValue<String> account : topAccounts) {
+            final Position position = new Position(UUID.fromString(account.getValue()), account.getScore());
+            positions.add(position);
+            index.put(position.uuid(), position);
+        }
+        //If the set is bigger than the mirror, the untracked accounts are below the last one loaded
+        cutoff = topAccounts.size() < trackedSize ? Double.NEGATIVE_INFINITY : topAccounts.getLast().getScore();
+        while (positions.size() > trackedSize) {
+            untrack(positions.pollLast());
+        }
+        stale = false;
+        dirty = true;
+    }
+
+    /**
+     * Apply a balance change
+     *
+     * @param uuid    The UUID of the account
+     * @param balance The new balance
+     * @return false if a tracked account fell below the cutoff and the mirror must be reloaded
+     */
+    public synchronized boolean update(@NotNull UUID uuid, double balance) {
+        final Position previous = index.remove(uuid);
+        if (previous != null) {
+            if (previous.balance() == balance) {
+                index.put(uuid, previous);
+                return !stale;
+            }
+            positions.remove(previous);
+            dirty = true;
+        }
+        if (balance > cutoff) {
+            final Position position = new Position(uuid, balance);
+            positions.add(position);
+            index.put(uuid, position);
+            dirty = true;
+            while (positions.size() > trackedSize) {
+                untrack(positions.pollLast());
+            }
+        } else if (previous != null) {
+            //An untracked account may now be above this one
+            stale = true;
+        }
+        return !stale;
+    }
+
+    private void untrack(Position position) {
+        index.remove(position.uuid());
+        cutoff = Math.max(cutoff, position.balance());
+    }
+
+    /**
+     * @return true if the mirror must be reloaded from Redis
+     */
+    public synchronized boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * Get the current leaderboard. The snapshot is immutable and can be read without locks
+     *
+     * @return The snapshot of the top positions
+     */
+    public @NotNull Snapshot snapshot() {
+        if (!dirty) return snapshot;
+        synchronized (this) {
+            if (!dirty) return snapshot;
+            final List<Position> top = new ArrayList<>(Math.min(size, positions.size()));
+            final Map<UUID, Integer> ranks = new HashMap<>();
+            for (Position position : positions) {
+                if (top.size() == size) break;
+                top.add(position);
+                ranks.put(position.uuid(), top.size());
+            }
+            final boolean complete = !stale && cutoff == Double.NEGATIVE_INFINITY && positions.size() <= size;
+            snapshot = new Snapshot(Collections.unmodifiableList(top), Collections.unmodifiableMap(ranks), complete);
+            dirty = false;
+            return snapshot;
+        }
+    }
+
+    /**
+     * @param uuid    The UUID of the account
+     * @param balance The balance of the account
+     */
+    public record Position(@NotNull UUID uuid, double balance) {
+    }
+
+    /**
+     * @param positions The positions of the page
+     * @param total     The number of accounts in the leaderboard
+     */
+    public record Page(@NotNull List<Position> positions, long total) {
+    }
+
+    /**
+     * @param top      The top positions, the first is the richest account
+     * @param ranks    The 1-based rank of every account in top
+     * @param complete True if top contains every account of the currency
+     */
+    public record Snapshot(@NotNull List<Position> top, @NotNull Map<UUID, Integer> ranks, boolean complete) {
+
+        /**
+         * @param rank 1-based rank
+         * @return The position at the rank, or null if outside the snapshot
+         */
+        public @Nullable Position get(int rank) {
+            if (rank < 1 || rank > top.size()) return null;
+            return top.get(rank - 1);
+        }
+
+        /**
+         * @param uuid The UUID of the account
+         * @return The 1-based rank of the account, or -1 if outside the snapshot
+         */
+        public int rank(@NotNull UUID uuid) {
+            return ranks.getOrDefault(uuid, -1);
+        }
+
+        /**
+         * @param page     1-based page number
+         * @param pageSize The positions per page
+         * @return The positions of the page, empty if the page is outside the snapshot
+         */
+        public @NotNull List<Position> page(int page, int pageSize) {
+            final int from = (page - 1) * pageSize;
+            if (page < 1 || from >= top.size()) return List.of();
+            return top.subList(from, Math.min(from + pageSize, top.size()));
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package dev.unnm3d.rediseconomy.currency;
+
+import io.lettuce.core.pubsub.RedisPubSubListener;
+
+public abstract class RedisEconomyBinaryListener implements RedisPubSubListener<byte[], byte[]> {
+
+    @Override
+    public void message(byte[] channel, byte[] message) {
+    }
+
+    @Override
+    public void message(byte[] pattern, byte[] channel, byte[] message) {
+    }
+
+    @Override
+    public void subscribed(byte[] channel, long count) {
+    }
+
+    @Override
+    public void psubscribed(byte[] pattern, long count) {
+    }
+
+    @Override
+    public void unsubscribed(byte[] channel, long count) {
+    }
+
+    @Override
+    public void punsubscribed(byte[] pattern, long count) {
+    }
+}
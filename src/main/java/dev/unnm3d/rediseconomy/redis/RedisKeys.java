@@ -8,6 +8,7 @@ public enum RedisKeys {
     MAX_PLAYER_BALANCES("rediseco:max_bals"),
     BALANCE_PREFIX("rediseco:balances_"),
     BALANCE_BANK_PREFIX("rediseco:b_balances_"),
+    TOTAL_SUPPLY_PREFIX("rediseco:total_supply_"),
     BANK_OWNERS("rediseco:b_owners"),
     UPDATE_PLAYER_CHANNEL_PREFIX("rediseco:update_"),
     UPDATE_MAX_BAL_PREFIX("rediseco:update_max_"),
@@ -16,6 +17,9 @@ public enum RedisKeys {
     MSG_CHANNEL("rediseco:paymsg"),
     TRANSACTIONS("rediseco:transactions:"),
     TRANSACTIONS_COUNTER("rediseco:transactions_counter"),
+    TRANSACTIONS_STREAM("rediseco:transactions_stream:"),
+    TRANSACTIONS_REVERTS("rediseco:transactions_reverts:"),
+    TRANSACTIONS_TIME_INDEX("rediseco:transactions_time:"),
     LOCKED_ACCOUNTS("rediseco:locked"),
     UPDATE_LOCKED_ACCOUNTS("rediseco:locked"),
     UPDATE_ONLINE("rediseco:online_update"),
@@ -3,38 +3,58 @@ package dev.unnm3d.rediseconomy.redis;
 import dev.unnm3d.rediseconomy.RedisEconomyPlugin;
 import io.lettuce.core.RedisClient;
 import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.TransactionResult;
 import io.lettuce.core.api.StatefulRedisConnection;
 import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
 import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
 
 import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.LongConsumer;
 
 public class RedisManager {
 
     protected static final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+    /**
+     * How long a transaction waits for a reserved connection
+     */
+    private static final long RESERVE_TIMEOUT_SECONDS = 5;
     private final RoundRobinConnectionPool<String, String> roundRobinConnectionPool;
+    private final RoundRobinConnectionPool<byte[], byte[]> binaryConnectionPool;
     private final List<StatefulRedisPubSubConnection<String, String>> pubSubConnections;
+    private final List<StatefulRedisPubSubConnection<byte[], byte[]>> binaryPubSubConnections;
     protected RedisClient lettuceRedisClient;
 
     public RedisManager(RedisClient lettuceRedisClient, int poolSize) {
         this.lettuceRedisClient = lettuceRedisClient;
         this.roundRobinConnectionPool = new RoundRobinConnectionPool<>(lettuceRedisClient::connect, poolSize);
+        //Binary connections are opened on their first use
+        this.binaryConnectionPool = new RoundRobinConnectionPool<>(() -> lettuceRedisClient.connect(ByteArrayCodec.INSTANCE), poolSize, false);
         pubSubConnections = new CopyOnWriteArrayList<>();
+        binaryPubSubConnections = new CopyOnWriteArrayList<>();
     }
 
     public <T> CompletionStage<T> getConnectionAsync(Function<RedisAsyncCommands<String, String>, CompletionStage<T>> redisCallBack) {
         return redisCallBack.apply(roundRobinConnectionPool.get().async());
     }
 
+    public <T> CompletionStage<T> getBinaryConnectionAsync(Function<RedisAsyncCommands<byte[], byte[]>, CompletionStage<T>> redisCallBack) {
+        return redisCallBack.apply(binaryConnectionPool.get().async());
+    }
+
     public <T> T getConnectionSync(Function<RedisCommands<String, String>, T> redisCallBack) {
         return redisCallBack.apply(roundRobinConnectionPool.get().sync());
     }
@@ -48,6 +68,15 @@ public class RedisManager {
         return completionStage;
     }
 
+    public <T> CompletionStage<T> getBinaryConnectionPipeline(Function<RedisAsyncCommands<byte[], byte[]>, CompletionStage<T>> redisCallBack) {
+        StatefulRedisConnection<byte[], byte[]> connection = binaryConnectionPool.get();
+        connection.setAutoFlushCommands(false);
+        CompletionStage<T> completionStage = redisCallBack.apply(connection.async());
+        connection.flushCommands();
+        connection.setAutoFlushCommands(true);
+        return completionStage;
+    }
+
     /**
      * Executes a transaction with the given Redis commands consumer.
      * If there is an exception during the transaction, it will be discarded.
@@ -69,12 +98,116 @@ public class RedisManager {
         }
     }
 
+    /**
+     * Executes a transaction without blocking the calling thread.
+     * The transaction runs on a reserved connection, waiting for one to be released if all are in use.
+     * All the commands are flushed in one write and the connection is released when EXEC completes
+     *
+     * @param redisCommandsConsumer the consumer that will queue the Redis commands
+     * @return a CompletionStage with the result of the redis transaction, or an empty Optional if the transaction was discarded
+     */
+    public CompletionStage<Optional<List<Object>>> executeTransactionAsync(Consumer<RedisAsyncCommands<String, String>> redisCommandsConsumer) {
+        return executeTransactionAsync(roundRobinConnectionPool, redisCommandsConsumer);
+    }
+
+    /**
+     * Same as {@link #executeTransactionAsync(Consumer)} but on a byte array codec connection
+     *
+     * @param redisCommandsConsumer the consumer that will queue the Redis commands
+     * @return a CompletionStage with the result of the redis transaction, or an empty Optional if the transaction was discarded
+     */
+    public CompletionStage<Optional<List<Object>>> executeBinaryTransactionAsync(Consumer<RedisAsyncCommands<byte[], byte[]>> redisCommandsConsumer) {
+        return executeTransactionAsync(binaryConnectionPool, redisCommandsConsumer);
+    }
+
+    private <K, V> CompletionStage<Optional<List<Object>>> executeTransactionAsync(RoundRobinConnectionPool<K, V> pool, Consumer<RedisAsyncCommands<K, V>> redisCommandsConsumer) {
+        return pool.reserve().orTimeout(RESERVE_TIMEOUT_SECONDS, TimeUnit.SECONDS).thenCompose(connection -> {
+            final RedisAsyncCommands<K, V> asyncCommands = connection.async();
+            connection.setAutoFlushCommands(false);
+            final RedisFuture<TransactionResult> exec;
+            try {
+                asyncCommands.multi();
+                redisCommandsConsumer.accept(asyncCommands);
+                exec = asyncCommands.exec();
+            } catch (Exception e) {
+                asyncCommands.discard();
+                connection.flushCommands();
+                connection.setAutoFlushCommands(true);
+                pool.release(connection);
+                throw e;
+            }
+            connection.flushCommands();
+            //Restore auto flush before the connection can be released to another transaction
+            connection.setAutoFlushCommands(true);
+            return exec.thenApply(result -> Optional.of(result)
+                            .filter(transactionResult -> !transactionResult.wasDiscarded())
+                            .map(transactionResult -> transactionResult.stream().toList()))
+                    .whenComplete((result, throwable) -> pool.release(connection));
+        });
+    }
+
     public StatefulRedisPubSubConnection<String, String> getPubSubConnection() {
         StatefulRedisPubSubConnection<String, String> pubSubConnection = lettuceRedisClient.connectPubSub();
         pubSubConnections.add(pubSubConnection);
         return pubSubConnection;
     }
 
+    public StatefulRedisPubSubConnection<byte[], byte[]> getBinaryPubSubConnection() {
+        StatefulRedisPubSubConnection<byte[], byte[]> pubSubConnection = lettuceRedisClient.connectPubSub(ByteArrayCodec.INSTANCE);
+        binaryPubSubConnections.add(pubSubConnection);
+        return pubSubConnection;
+    }
+
+    /**
+     * Remove the keys matching a pattern without blocking Redis: the keyspace is walked with SCAN
+     * and every page is removed with UNLINK, pausing between the pages
+     *
+     * @param pattern     The key pattern
+     * @param batchSize   The COUNT hint of each SCAN page
+     * @param pauseMillis The pause between two pages
+     * @param onProgress  Called with the number of keys removed so far after each page
+     * @return The number of removed keys
+     */
+    public CompletionStage<Long> unlinkMatching(String pattern, int batchSize, long pauseMillis, LongConsumer onProgress) {
+        return unlinkMatching(ScanArgs.Builder.matches(pattern).limit(batchSize), ScanCursor.INITIAL, pauseMillis, 0, onProgress);
+    }
+
+    private CompletionStage<Long> unlinkMatching(ScanArgs scanArgs, ScanCursor cursor, long pauseMillis, long removed, LongConsumer onProgress) {
+        return getConnectionAsync(connection -> connection.scan(cursor, scanArgs)
+                .thenCompose(result -> (result.getKeys().isEmpty() ?
+                        CompletableFuture.completedFuture(0L) :
+                        connection.unlink(result.getKeys().toArray(new String[0])))
+                        .thenCompose(unlinked -> {
+                            final long total = removed + unlinked;
+                            onProgress.accept(total);
+                            if (result.isFinished()) {
+                                return CompletableFuture.completedFuture(total);
+                            }
+                            return CompletableFuture.runAsync(() -> {
+                                    }, CompletableFuture.delayedExecutor(pauseMillis, TimeUnit.MILLISECONDS))
+                                    .thenCompose(paused -> unlinkMatching(scanArgs, result, pauseMillis, total, onProgress));
+                        })));
+    }
+
+    /**
+     * Load every registered script in the script cache of Redis,
+     * so the first calls and the calls inside transactions don't hit NOSCRIPT
+     *
+     * @return A CompletionStage that completes when every script is loaded
+     */
+    public CompletionStage<Void> loadScripts() {
+        return getConnectionAsync(connection -> CompletableFuture.allOf(RedisScript.getRegistered().stream()
+                .map(script -> script.load(connection).toCompletableFuture())
+                .toArray(CompletableFuture[]::new)));
+    }
+
+    /**
+     * @return The number of round-robin connections of the string codec pool
+     */
+    public int getPoolSize() {
+        return roundRobinConnectionPool.size();
+    }
+
     public void expandPool(int expandBy) {
         roundRobinConnectionPool.expandPool(expandBy);
     }
@@ -85,6 +218,9 @@ public class RedisManager {
 
     public void close() {
         pubSubConnections.forEach(StatefulRedisPubSubConnection::close);
+        binaryPubSubConnections.forEach(StatefulRedisPubSubConnection::close);
+        roundRobinConnectionPool.close();
+        binaryConnectionPool.close();
         lettuceRedisClient.shutdown(Duration.ofSeconds(1), Duration.ofSeconds(1));
         executorService.shutdown();
     }
@@ -0,0 +1,94 @@
+package dev.unnm3d.rediseconomy.redis;
+
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A Lua script called by its SHA1 with EVALSHA, so the source is not sent on every call.
+ * The SHA1 is computed locally: when Redis doesn't know the script (NOSCRIPT after a restart or a failover)
+ * the call is sent again with EVAL, which also caches the script on Redis.
+ * Every script is registered when created, so it can be preloaded with {@link RedisManager#loadScripts()}
+ */
+public class RedisScript {
+    private static final List<RedisScript> REGISTERED = new CopyOnWriteArrayList<>();
+    @Getter
+    private final String source;
+    @Getter
+    private final String sha;
+
+    public RedisScript(String source) {
+        this.source = source;
+        this.sha = sha1(source);
+        REGISTERED.add(this);
+    }
+
+    /**
+     * @return Every script created so far
+     */
+    public static List<RedisScript> getRegistered() {
+        return List.copyOf(REGISTERED);
+    }
+
+    /**
+     * Call the script by SHA1, sending the source only if Redis doesn't know it.
+     * Don't use it inside MULTI: a NOSCRIPT error is only reported by EXEC, after the other queued commands ran.
+     * Put the other commands in the script instead
+     *
+     * @param commands The async commands of the connection
+     * @param type     The output type of the script
+     * @param keys     The keys of the script
+     * @param values   The arguments of the script
+     * @return The result of the script
+     */
+    @SafeVarargs
+    public final <K, V, T> CompletionStage<T> eval(RedisAsyncCommands<K, V> commands, ScriptOutputType type, K[] keys, V... values) {
+        return commands.<T>evalsha(sha, type, keys, values)
+                .exceptionallyCompose(throwable -> isNoScript(throwable) ?
+                        commands.<T>eval(source, type, keys, values) :
+                        CompletableFuture.failedStage(throwable));
+    }
+
+    /**
+     * Load the script in the script cache of Redis
+     *
+     * @param commands The async commands of the connection
+     * @return The SHA1 of the script
+     */
+    public CompletionStage<String> load(RedisAsyncCommands<String, String> commands) {
+        return commands.scriptLoad(source);
+    }
+
+    /**
+     * @param error A Throwable
+     * @return If the error is a NOSCRIPT reply
+     */
+    public static boolean isNoScript(Object error) {
+        Object cause = error;
+        while (cause instanceof CompletionException completionException && completionException.getCause() != null) {
+            cause = completionException.getCause();
+        }
+        return cause instanceof RedisCommandExecutionException executionException &&
+                executionException.getMessage() != null &&
+                executionException.getMessage().startsWith("NOSCRIPT");
+    }
+
+    private static String sha1(String source) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
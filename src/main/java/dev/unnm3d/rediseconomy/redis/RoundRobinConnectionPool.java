@@ -4,6 +4,10 @@ package dev.unnm3d.rediseconomy.redis;
 import io.lettuce.core.api.StatefulRedisConnection;
 
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
@@ -11,10 +15,40 @@ public class RoundRobinConnectionPool<K, V> {
     private final AtomicInteger next = new AtomicInteger(0);
     private StatefulRedisConnection<K, V>[] elements;
     private final Supplier<StatefulRedisConnection<K, V>> statefulRedisConnectionSupplier;
+    /**
+     * Idle connections that can be reserved for exclusive use (transactions)
+     */
+    private final ConcurrentLinkedQueue<StatefulRedisConnection<K, V>> reservable = new ConcurrentLinkedQueue<>();
+    /**
+     * Reservations waiting for an idle connection
+     */
+    private final ConcurrentLinkedQueue<CompletableFuture<StatefulRedisConnection<K, V>>> waiters = new ConcurrentLinkedQueue<>();
+    /**
+     * Open or opening reserved connections, at most as many as the round-robin connections
+     */
+    private final AtomicInteger reservedConnections = new AtomicInteger(0);
+    /**
+     * Reserved connections are opened here, never on the thread asking for them
+     */
+    private final ExecutorService connector = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("rediseco-connector").factory());
+    /**
+     * Once closed, released and newly opened reserved connections are closed instead of kept
+     */
+    private volatile boolean closed = false;
 
     public RoundRobinConnectionPool(Supplier<StatefulRedisConnection<K, V>> statefulRedisConnectionSupplier, int poolSize) {
+        this(statefulRedisConnectionSupplier, poolSize, true);
+    }
+
+    /**
+     * @param statefulRedisConnectionSupplier the connection factory
+     * @param poolSize                        the number of round-robin connections
+     * @param eager                           if false, connections are opened on their first use
+     */
+    public RoundRobinConnectionPool(Supplier<StatefulRedisConnection<K, V>> statefulRedisConnectionSupplier, int poolSize, boolean eager) {
         this.statefulRedisConnectionSupplier = statefulRedisConnectionSupplier;
         this.elements = new StatefulRedisConnection[poolSize];
+        if (!eager) return;
         for (int i = 0; i < poolSize; i++) {
             elements[i] = statefulRedisConnectionSupplier.get();
         }
@@ -26,6 +60,13 @@ public class RoundRobinConnectionPool<K, V> {
         this.elements = Arrays.copyOf(elements, elements.length + expandBy);
     }
 
+    /**
+     * @return the number of round-robin connections
+     */
+    public int size() {
+        return elements.length;
+    }
+
     public StatefulRedisConnection<K, V> get() {
         int index = next.getAndIncrement() % elements.length;
         StatefulRedisConnection<K, V> connection = elements[index];
@@ -41,9 +82,88 @@ public class RoundRobinConnectionPool<K, V> {
         return connection;
     }
 
+    /**
+     * Reserve a connection for exclusive use.
+     * It is not shared with the round-robin connections and must be given back with {@link #release}.
+     * If every reserved connection is in use, the reservation completes when one is released
+     *
+     * @return a connection that no one else is using
+     */
+    public CompletableFuture<StatefulRedisConnection<K, V>> reserve() {
+        if (closed) return CompletableFuture.failedFuture(new IllegalStateException("The connection pool is closed"));
+        final CompletableFuture<StatefulRedisConnection<K, V>> waiter = new CompletableFuture<>();
+        waiters.offer(waiter);
+        if (reservable.isEmpty()) openReserved();
+        dispatch();
+        return waiter;
+    }
+
+    /**
+     * Give back a reserved connection to the next waiting reservation, or to the idle connections
+     *
+     * @param connection the reserved connection
+     */
+    public void release(StatefulRedisConnection<K, V> connection) {
+        if (closed || !connection.isOpen() || connection.isMulti()) {
+            connection.closeAsync();
+            reservedConnections.decrementAndGet();
+            if (!waiters.isEmpty()) openReserved();
+            return;
+        }
+        reservable.offer(connection);
+        dispatch();
+    }
+
+    /**
+     * Open a new reserved connection in the background, if the bound allows it
+     */
+    private void openReserved() {
+        if (closed) return;
+        int count;
+        do {
+            count = reservedConnections.get();
+            if (count >= elements.length) return;
+        } while (!reservedConnections.compareAndSet(count, count + 1));
+        CompletableFuture.supplyAsync(statefulRedisConnectionSupplier, connector).whenComplete((connection, throwable) -> {
+            if (throwable != null) {
+                reservedConnections.decrementAndGet();
+                final CompletableFuture<StatefulRedisConnection<K, V>> waiter = waiters.poll();
+                if (waiter != null) waiter.completeExceptionally(throwable);
+                return;
+            }
+            if (closed) {
+                connection.closeAsync();
+                return;
+            }
+            reservable.offer(connection);
+            dispatch();
+        });
+    }
+
+    /**
+     * Hand the idle connections to the waiting reservations
+     */
+    private void dispatch() {
+        while (!waiters.isEmpty()) {
+            final StatefulRedisConnection<K, V> connection = reservable.poll();
+            if (connection == null) return;
+            if (!connection.isOpen()) {
+                reservedConnections.decrementAndGet();
+                openReserved();
+                continue;
+            }
+            final CompletableFuture<StatefulRedisConnection<K, V>> waiter = waiters.poll();
+            //Timed out reservations are skipped, the connection goes back until the next waiter
+            if (waiter == null || !waiter.complete(connection)) {
+                reservable.offer(connection);
+            }
+        }
+    }
+
     public String printPool() {
         StringBuilder sb = new StringBuilder();
         for (StatefulRedisConnection<K, V> element : elements) {
+            if (element == null) continue;
             sb.append("Open: ")
                     .append(element.isOpen())
                     .append(", multi: ")
@@ -56,10 +176,22 @@ public class RoundRobinConnectionPool<K, V> {
     }
 
 
+    /**
+     * Close the round-robin and the idle reserved connections, cancel the waiting reservations
+     * and stop the connector. Reserved connections in use are closed when released
+     */
     public void close() {
+        closed = true;
         for (StatefulRedisConnection<K, V> element : elements) {
-            element.closeAsync();
+            if (element != null)
+                element.closeAsync();
+        }
+        reservable.forEach(StatefulRedisConnection::closeAsync);
+        CompletableFuture<StatefulRedisConnection<K, V>> waiter;
+        while ((waiter = waiters.poll()) != null) {
+            waiter.cancel(false);
         }
+        connector.shutdown();
     }
 
 }
\ No newline at end of file
@@ -6,7 +6,16 @@ import lombok.Getter;
 import java.util.UUID;
 
 public class AccountID {
-    private final String id;
+    /**
+     * The UUID bits of a player account, unused for non-player accounts
+     */
+    private final long mostSignificantBits;
+    private final long leastSignificantBits;
+    /**
+     * The bank id of a non-player account, or the cached string of the UUID of a player account
+     */
+    private String id;
+    private UUID uuid;
     @Getter
     private final boolean isPlayer;
 
@@ -17,6 +26,8 @@ public class AccountID {
      */
     public AccountID(String id) {
         this.id = id;
+        this.mostSignificantBits = 0;
+        this.leastSignificantBits = 0;
         this.isPlayer = false;
     }
 
@@ -26,13 +37,24 @@ public class AccountID {
      * @param id The account id.
      */
     public AccountID(UUID id) {
-        this.id = id.toString();
+        this(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        this.uuid = id;
+    }
+
+    /**
+     * Creates a new player account id from the bits of its UUID
+     *
+     * @param mostSignificantBits  The most significant bits of the UUID
+     * @param leastSignificantBits The least significant bits of the UUID
+     */
+    public AccountID(long mostSignificantBits, long leastSignificantBits) {
+        this.mostSignificantBits = mostSignificantBits;
+        this.leastSignificantBits = leastSignificantBits;
         this.isPlayer = true;
     }
 
     public AccountID() {
-        this.id = RedisKeys.getServerUUID().toString();
-        this.isPlayer = true;
+        this(RedisKeys.getServerUUID());
     }
 
     public boolean isServer() {
@@ -41,11 +63,44 @@ public class AccountID {
     }
 
     public UUID getUUID() {
-        return UUID.fromString(id);
+        if (!isPlayer) return UUID.fromString(id);
+        if (uuid == null) {
+            uuid = new UUID(mostSignificantBits, leastSignificantBits);
+        }
+        return uuid;
+    }
+
+    long getMostSignificantBits() {
+        return mostSignificantBits;
+    }
+
+    long getLeastSignificantBits() {
+        return leastSignificantBits;
     }
 
     @Override
     public String toString() {
+        if (id == null) {
+            id = getUUID().toString();
+        }
         return id;
     }
+
+    /**
+     * Account ids are equal when their string forms are, as when the id was kept as a string
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof AccountID other) || isPlayer != other.isPlayer) return false;
+        if (isPlayer) {
+            return mostSignificantBits == other.mostSignificantBits && leastSignificantBits == other.leastSignificantBits;
+        }
+        return id.equals(other.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
 }
@@ -0,0 +1,32 @@
+package dev.unnm3d.rediseconomy.transaction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.TreeMap;
+
+/**
+ * Writes the accounts read by the {@link TransactionArchiver} to an archive file
+ */
+interface ArchiveWriter extends Closeable {
+
+    /**
+     * @param archivePath The archive file, ".rtx" files are written with the indexed format, any other file as gzip text
+     * @return The writer of the archive format
+     * @throws IOException If the file can't be opened
+     */
+    static ArchiveWriter open(Path archivePath) throws IOException {
+        return archivePath.getFileName().toString().endsWith(IndexedArchiveReader.EXTENSION) ?
+                new IndexedArchiveWriter(archivePath) :
+                new GzipArchiveWriter(archivePath);
+    }
+
+    void writeAccount(AccountID accountId, String name, TreeMap<Long, Transaction> transactions) throws IOException;
+
+    void flush() throws IOException;
+
+    /**
+     * @return If the accounts written before a flush can be read back even if the archive is never closed
+     */
+    boolean isReadableAfterFlush();
+}
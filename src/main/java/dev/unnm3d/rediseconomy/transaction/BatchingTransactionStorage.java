@@ -0,0 +1,138 @@
+package dev.unnm3d.rediseconomy.transaction;
+
+import dev.unnm3d.rediseconomy.RedisEconomyPlugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects the transactions saved in a short window and writes them with a single save of the wrapped storage.
+ * A batch is written after batchMillis from its first transaction, or as soon as it reaches batchSize transactions
+ */
+public class BatchingTransactionStorage implements TransactionStorage {
+    private final TransactionStorage storage;
+    private final long batchMillis;
+    private final int batchSize;
+    private final ConcurrentLinkedQueue<PendingSave> queue;
+    private final AtomicInteger queuedTransactions;
+    private final AtomicBoolean batchScheduled;
+    private final Set<CompletableFuture<?>> inFlight;
+
+    public BatchingTransactionStorage(TransactionStorage storage, long batchMillis, int batchSize) {
+        this.storage = storage;
+        this.batchMillis = batchMillis;
+        this.batchSize = Math.max(1, batchSize);
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.queuedTransactions = new AtomicInteger(0);
+        this.batchScheduled = new AtomicBoolean(false);
+        this.inFlight = ConcurrentHashMap.newKeySet();
+    }
+
+    @Override
+    public CompletionStage<List<Long>> saveTransactions(@NotNull List<Transaction> transactions, long ttlSeconds) {
+        final PendingSave pendingSave = new PendingSave(transactions, ttlSeconds, new CompletableFuture<>());
+        queue.add(pendingSave);
+        if (queuedTransactions.addAndGet(transactions.size()) >= batchSize) {
+            CompletableFuture.runAsync(this::flush);
+        } else if (batchScheduled.compareAndSet(false, true)) {
+            CompletableFuture.runAsync(this::flush, CompletableFuture.delayedExecutor(batchMillis, TimeUnit.MILLISECONDS));
+        }
+        return pendingSave.result();
+    }
+
+    /**
+     * Write every queued transaction, in batches of at most batchSize transactions.
+     * Transactions with different TTLs are written with separate saves
+     *
+     * @return A future completed when every batch written so far, including the ones of earlier flushes, is saved
+     */
+    public CompletableFuture<Void> flush() {
+        batchScheduled.set(false);
+        while (!queue.isEmpty()) {
+            final Map<Long, List<PendingSave>> batchesByTTL = new HashMap<>();
+            int polled = 0;
+            PendingSave pendingSave;
+            while (polled < batchSize && (pendingSave = queue.poll()) != null) {
+                polled += pendingSave.transactions().size();
+                batchesByTTL.computeIfAbsent(pendingSave.ttlSeconds(), ttl -> new ArrayList<>()).add(pendingSave);
+            }
+            queuedTransactions.addAndGet(-polled);
+            batchesByTTL.forEach(this::write);
+        }
+        return CompletableFuture.allOf(inFlight.toArray(new CompletableFuture[0]));
+    }
+
+    private void write(long ttlSeconds, List<PendingSave> batch) {
+        final List<Transaction> transactions = new ArrayList<>();
+        for (PendingSave pendingSave : batch) {
+            transactions.addAll(pendingSave.transactions());
+        }
+        final CompletableFuture<List<Long>> save = storage.saveTransactions(transactions, ttlSeconds).toCompletableFuture();
+        inFlight.add(save);
+        save.whenComplete((ids, throwable) -> {
+            inFlight.remove(save);
+            if (throwable != null) {
+                batch.forEach(pendingSave -> pendingSave.result().completeExceptionally(throwable));
+                return;
+            }
+            int offset = 0;
+            for (PendingSave pendingSave : batch) {
+                final int size = pendingSave.transactions().size();
+                pendingSave.result().complete(List.copyOf(ids.subList(offset, offset + size)));
+                offset += size;
+            }
+            RedisEconomyPlugin.debug("03batch Saved " + transactions.size() + " transactions of " + batch.size() + " calls in one batch");
+        });
+    }
+
+    @Override
+    public CompletionStage<LinkedHashMap<Long, Transaction>> getTransactions(@NotNull AccountID accountId, int limit) {
+        return storage.getTransactions(accountId, limit);
+    }
+
+    @Override
+    public CompletionStage<Transaction> getTransaction(@NotNull AccountID accountId, long id) {
+        return storage.getTransaction(accountId, id);
+    }
+
+    @Override
+    public CompletionStage<TransactionPage> getTransactions(@NotNull AccountID accountId, long from, long to, @Nullable TransactionCursor cursor, int pageSize) {
+        return storage.getTransactions(accountId, from, to, cursor, pageSize);
+    }
+
+    @Override
+    public CompletionStage<?> updateTransaction(@NotNull AccountID accountId, long id, @NotNull Transaction transaction) {
+        return storage.updateTransaction(accountId, id, transaction);
+    }
+
+    @Override
+    public String getAccountKeyPrefix() {
+        return storage.getAccountKeyPrefix();
+    }
+
+    @Override
+    public CompletionStage<TreeMap<Long, Transaction>> getAllTransactions(@NotNull AccountID accountId) {
+        return storage.getAllTransactions(accountId);
+    }
+
+    @Override
+    public CompletionStage<Long> removeTransactions(@NotNull AccountID accountId, @NotNull Collection<Long> ids) {
+        return storage.removeTransactions(accountId, ids);
+    }
+
+    @Override
+    public List<String> getKeyPatterns() {
+        return storage.getKeyPatterns();
+    }
+
+    private record PendingSave(List<Transaction> transactions, long ttlSeconds, CompletableFuture<List<Long>> result) {
+    }
+}
@@ -4,35 +4,48 @@ import dev.unnm3d.rediseconomy.RedisEconomyPlugin;
 import dev.unnm3d.rediseconomy.api.TransactionEvent;
 import dev.unnm3d.rediseconomy.currency.Currency;
 import dev.unnm3d.rediseconomy.redis.RedisKeys;
-import io.lettuce.core.ScriptOutputType;
+import dev.unnm3d.rediseconomy.redis.RedisManager;
 import org.bukkit.command.CommandSender;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.LongConsumer;
 
 public class EconomyExchange {
 
     private final RedisEconomyPlugin plugin;
     private final ExecutorService executorService;
+    private final TransactionStorage storage;
+    private final TransactionIdAllocator idAllocator;
+    private final RedisManager redisManager;
     private long updateTIDTimestamp = System.currentTimeMillis();
     private int lastTID = 0;
 
     /**
      * Constructor for EconomyExchange
      *
-     * @param plugin The RedisEconomyPlugin instance
+     * @param plugin       The RedisEconomyPlugin instance
+     * @param redisManager The RedisManager used to store the transactions
      */
-    public EconomyExchange(final RedisEconomyPlugin plugin) {
+    public EconomyExchange(final RedisEconomyPlugin plugin, final RedisManager redisManager) {
         this.plugin = plugin;
         this.executorService = Executors.newFixedThreadPool(plugin.getConfigManager().getSettings().transactionExecutorThreads,
                 Thread.ofVirtual().factory());
+        this.redisManager = redisManager;
+        this.idAllocator = new TransactionIdAllocator(redisManager, plugin.getConfigManager().getSettings().transactionIdBlockSize);
+        final TransactionStorage redisStorage = plugin.getConfigManager().getSettings().transactionsStorage.equalsIgnoreCase("STREAM") ?
+                new StreamTransactionStorage(redisManager, idAllocator, plugin.getConfigManager().getSettings().transactionsStreamMaxLength,
+                        plugin.getConfigManager().getSettings().binaryTransactions) :
+                new HashTransactionStorage(redisManager, idAllocator, plugin.getConfigManager().getSettings().binaryTransactions);
+        this.storage = plugin.getConfigManager().getSettings().transactionsBatchMillis > 0 ?
+                new BatchingTransactionStorage(redisStorage, plugin.getConfigManager().getSettings().transactionsBatchMillis,
+                        plugin.getConfigManager().getSettings().transactionsBatchSize) :
+                redisStorage;
     }
 
     /**
@@ -40,36 +53,39 @@ public class EconomyExchange {
      *
      * @param accountId Account id
      * @param limit     Maximum number of transactions to return
-     * @return Map of transaction ids and transactions
+     * @return Map of transaction ids and transactions, newest first
      */
-    public CompletionStage<TreeMap<Long, Transaction>> getTransactions(AccountID accountId, int limit) {
-        return CompletableFuture.supplyAsync(() ->
-                        plugin.getCurrenciesManager().getRedisManager().getConnectionSync(connection ->
-                                connection.hgetall(RedisKeys.TRANSACTIONS + accountId.toString())
-                        ), executorService)
-                .thenApply(transactions -> {
-                    if (transactions == null || transactions.isEmpty()) {
-                        return new TreeMap<Long, Transaction>();
-                    }
+    public CompletionStage<LinkedHashMap<Long, Transaction>> getTransactions(AccountID accountId, int limit) {
+        return storage.getTransactions(accountId, limit)
+                .exceptionally(exc -> {
+                    exc.printStackTrace();
+                    return new LinkedHashMap<>(); // Return empty map instead of null for better error handling
+                });
+    }
 
-                    final TreeMap<Long, Transaction> transactionsMap = new TreeMap<>();
-                    transactions.entrySet().stream().toList().stream()
-                            .sorted(Comparator.<Map.Entry<String, String>>comparingLong(entry ->
-                                    Long.parseLong(entry.getKey())).reversed())
-                            .limit(limit)
-                            .forEach(entry -> transactionsMap.put(
-                                    Long.parseLong(entry.getKey()),
-                                    Transaction.fromString(entry.getValue())
-                            ));
-                    return transactionsMap;
-                })
+    /**
+     * Get a page of transactions from an account id in a time range, newest first.
+     * Transactions saved by older versions, without a time index, are indexed when the account is first browsed
+     *
+     * @param accountId Account id
+     * @param from      Minimum timestamp, inclusive
+     * @param to        Maximum timestamp, inclusive
+     * @param cursor    Cursor of the previous page, null for the first page
+     * @param pageSize  Maximum number of transactions to return
+     * @return The page of transactions
+     */
+    public CompletionStage<TransactionPage> getTransactions(AccountID accountId, long from, long to, @Nullable TransactionCursor cursor, int pageSize) {
+        return storage.getTransactions(accountId, from, to, cursor, pageSize)
                 .exceptionally(exc -> {
                     exc.printStackTrace();
-                    return new TreeMap<>(); // Return empty map instead of null for better error handling
+                    return TransactionPage.empty();
                 });
     }
 
     public int getCurrentTransactionID() {
+        if (idAllocator.getLastAllocatedId() > 0) {
+            return (int) idAllocator.getLastAllocatedId();
+        }
         if (System.currentTimeMillis() - this.updateTIDTimestamp > 10000 || this.lastTID == 0) {
             plugin.getCurrenciesManager().getRedisManager()
                     .getConnectionAsync(connection ->
@@ -83,21 +99,31 @@ public class EconomyExchange {
     /**
      * Remove all transactions from Redis
      *
-     * @return How many transaction accounts were removed
+     * @return How many transaction keys were removed
      */
     public CompletionStage<Long> removeAllTransactions() {
-        return plugin.getCurrenciesManager().getRedisManager().getConnectionAsync(connection -> {
-                    try {
-                        List<String> keys = connection.keys(RedisKeys.TRANSACTIONS + "*").get();
-                        if (keys.isEmpty()) {
-                            return CompletableFuture.completedFuture(0L);
-                        }
-                        return connection.del(keys.toArray(new String[0]));
-                    } catch (InterruptedException | ExecutionException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
-        );
+        return removeAllTransactions(removed -> {
+        });
+    }
+
+    /**
+     * Remove all transactions from Redis in small batches, so Redis is never blocked for long
+     *
+     * @param onProgress Called with the number of keys removed so far
+     * @return How many transaction keys were removed
+     */
+    public CompletionStage<Long> removeAllTransactions(LongConsumer onProgress) {
+        CompletionStage<Long> removal = CompletableFuture.completedFuture(0L);
+        for (String pattern : storage.getKeyPatterns()) {
+            removal = removal.thenCompose(previous -> redisManager.unlinkMatching(pattern,
+                            plugin.settings().keyRemovalBatchSize, plugin.settings().keyRemovalPauseMillis,
+                            removed -> onProgress.accept(previous + removed))
+                    .thenApply(removed -> previous + removed));
+        }
+        return removal.thenApply(removed -> {
+            RedisEconomyPlugin.debug("Removed " + removed + " transaction keys");
+            return removed;
+        });
     }
 
     /**
@@ -108,10 +134,7 @@ public class EconomyExchange {
      * @return Transaction
      */
     public CompletionStage<Transaction> getTransaction(@NotNull AccountID accountId, long id) {
-        return CompletableFuture.supplyAsync(() -> {
-            return Transaction.fromString(plugin.getCurrenciesManager().getRedisManager().getConnectionSync(connection ->
-                    connection.hget(RedisKeys.TRANSACTIONS + accountId.toString(), String.valueOf(id))));
-        }, executorService).orTimeout(plugin.getConfigManager().getSettings().redis.timeout(), TimeUnit.MILLISECONDS).exceptionally(exc -> {
+        return storage.getTransaction(accountId, id).toCompletableFuture().orTimeout(plugin.getConfigManager().getSettings().redis.timeout(), TimeUnit.MILLISECONDS).exceptionally(exc -> {
             exc.printStackTrace();
             return null;
         });
@@ -151,19 +174,10 @@ public class EconomyExchange {
                         plugin.getServer().getPluginManager().callEvent(transactionReceiverEvent);
                     });
 
-                    //noinspection unchecked
-                    return plugin.getCurrenciesManager().getRedisManager().getConnectionSync(connection ->
-                            (List<Long>) connection.eval(
-                                    "local a=redis.call('incr',KEYS[1])local b=redis.call('incr',KEYS[1])redis.call('hset',KEYS[2],a,ARGV[1])redis.call('hset',KEYS[3],b,ARGV[2])if tonumber(ARGV[3])>0 then redis.call('hexpire',KEYS[2],ARGV[3],'FIELDS',1,a)redis.call('hexpire',KEYS[3],ARGV[3],'FIELDS',1,b)end;return{a,b}",
-                                    ScriptOutputType.MULTI,
-                                    new String[]{
-                                            RedisKeys.TRANSACTIONS_COUNTER.toString(),
-                                            RedisKeys.TRANSACTIONS + sender.toString(),
-                                            RedisKeys.TRANSACTIONS + target.toString()}, //Key rediseco:transactions:playerUUID
-                                    transactionSenderEvent.getTransaction().toString(),
-                                    transactionReceiverEvent.getTransaction().toString(),
-                                    String.valueOf(currency.getTransactionsTTL())));
-                }, executorService).orTimeout(plugin.getConfigManager().getSettings().redis.timeout(), TimeUnit.MILLISECONDS)
+                    return List.of(transactionSenderEvent.getTransaction(), transactionReceiverEvent.getTransaction());
+                }, executorService)
+                .thenCompose(transactions -> storage.saveTransactions(transactions, currency.getTransactionsTTL()))
+                .toCompletableFuture().orTimeout(plugin.getConfigManager().getSettings().redis.timeout(), TimeUnit.MILLISECONDS)
                 .exceptionally(exc -> {
                     RedisEconomyPlugin.debug("ERROR!!!!! 03payment Exception while saving transaction for " + sender + " and " + target + ": " + exc.getMessage());
                     return List.of((long) -1, (long) -1);
@@ -200,16 +214,11 @@ public class EconomyExchange {
                             //If target is null, it has been sent from the server
                             amount, null, reason + stackTrace));
                     plugin.getScheduler().runTask(() -> plugin.getServer().getPluginManager().callEvent(transactionEvent));
-                    return (long) plugin.getCurrenciesManager().getRedisManager().getConnectionSync(commands -> commands.eval(
-                            "local a=redis.call('incr',KEYS[1])redis.call('hset',KEYS[2],a,ARGV[1])if tonumber(ARGV[2])>0 then redis.call('hexpire',KEYS[2],ARGV[2],'FIELDS',1,a)end;return a",
-                            ScriptOutputType.INTEGER,
-                            new String[]{
-                                    RedisKeys.TRANSACTIONS_COUNTER.toString(),
-                                    RedisKeys.TRANSACTIONS + accountOwner.toString() //Key rediseco:transactions:playerUUID
-                            },
-                            transactionEvent.getTransaction().toString(),
-                            String.valueOf(currency.getTransactionsTTL())));
-                }, executorService).orTimeout(plugin.getConfigManager().getSettings().redis.timeout(), TimeUnit.MILLISECONDS)
+                    return transactionEvent.getTransaction();
+                }, executorService)
+                .thenCompose(transaction -> storage.saveTransactions(List.of(transaction), currency.getTransactionsTTL()))
+                .thenApply(List::getFirst)
+                .toCompletableFuture().orTimeout(plugin.getConfigManager().getSettings().redis.timeout(), TimeUnit.MILLISECONDS)
                 .exceptionally(exc -> {
                     exc.printStackTrace();
                     RedisEconomyPlugin.debug("ERROR!!!!! 03 Transaction Exception while saving transaction for " + accountOwner + " and " + target + ": " + exc.getMessage());
@@ -265,14 +274,7 @@ public class EconomyExchange {
                                 revertTransactionEvent.getTransaction().setRevertedWith(String.valueOf(newId));
 
                                 // Update Redis asynchronously and return the newId
-                                return plugin.getCurrenciesManager().getRedisManager()
-                                        .getConnectionAsync(connection ->
-                                                connection.hset(
-                                                        RedisKeys.TRANSACTIONS + accountOwner.toString(),
-                                                        String.valueOf(transactionId),
-                                                        revertTransactionEvent.getTransaction().toString()
-                                                )
-                                        )
+                                return storage.updateTransaction(accountOwner, transactionId, revertTransactionEvent.getTransaction())
                                         .thenApply(updateResult -> {
                                             RedisEconomyPlugin.debug("revert02 Replace transaction " + transactionId +
                                                     " with a new revertedWith id on Redis: " + updateResult);
@@ -287,103 +289,71 @@ public class EconomyExchange {
     }
 
     /**
-     * Archives all transactions to a file
+     * Mark a transaction whose balance change was rejected by Redis.
+     * A transaction with the opposite amount is saved without changing the balance, and the rejected one is marked as reverted with it
+     *
+     * @param accountOwner  The id of the account
+     * @param transactionId The id of the rejected transaction
+     * @return The id of the new transaction, -1 if the rejected transaction was not saved or is already reverted
+     */
+    public CompletionStage<Long> rejectTransaction(AccountID accountOwner, long transactionId) {
+        if (transactionId < 0) return CompletableFuture.completedStage((long) -1);
+        return getTransaction(accountOwner, transactionId)
+                .thenCompose(transaction -> {
+                    if (transaction == null || transaction.getRevertedWith() != null) {
+                        return CompletableFuture.completedFuture((long) -1);
+                    }
+                    final Currency currency = plugin.getCurrenciesManager().getCurrencyByName(transaction.getCurrencyName());
+                    if (currency == null) {
+                        return CompletableFuture.completedFuture((long) -1);
+                    }
+                    return saveTransaction(accountOwner, transaction.getActor(), -transaction.getAmount(), currency, "Rejected #" + transactionId + ": " + transaction.getReason())
+                            .thenCompose(newId -> {
+                                if (newId < 0) return CompletableFuture.completedFuture(newId);
+                                transaction.setRevertedWith(String.valueOf(newId));
+                                return storage.updateTransaction(accountOwner, transactionId, transaction)
+                                        .thenApply(updateResult -> {
+                                            RedisEconomyPlugin.debug("reject01 Transaction " + transactionId + " rejected by Redis, marked with " + newId);
+                                            return newId;
+                                        });
+                            });
+                })
+                .exceptionally(throwable -> {
+                    RedisEconomyPlugin.debug("Failed to mark the rejected transaction " + transactionId + ": " + throwable.getMessage());
+                    return (long) -1;
+                });
+    }
+
+    /**
+     * Archives the transactions of every account to a gzip file, or to an indexed archive if the file
+     * ends with {@link IndexedArchiveReader#EXTENSION}, then removes the archived transactions
      *
      * @param sender      Command sender, usually a player or console
-     * @param archivePath Path to the archive file where transactions will be saved
+     * @param archivePath Path to the archive file where transactions will be saved, ".gz" is appended if it has no archive extension
      * @return A CompletionStage that completes with the number of archived accounts
      */
     public CompletionStage<Integer> archiveTransactions(CommandSender sender, Path archivePath) {
+        final String fileName = archivePath.getFileName().toString();
+        final Path outputPath = fileName.endsWith(".gz") || fileName.endsWith(IndexedArchiveReader.EXTENSION) ?
+                archivePath : archivePath.resolveSibling(archivePath.getFileName() + ".gz");
         // Create parent directories if they don't exist
         try {
-            Files.createDirectories(archivePath.getParent());
+            Files.createDirectories(outputPath.getParent());
         } catch (IOException e) {
             return CompletableFuture.failedFuture(new IOException("Failed to create archive directory", e));
         }
 
-        return CompletableFuture.supplyAsync(() -> {
-            int totalAccounts = plugin.getCurrenciesManager().getNameUniqueIds().size();
-            int archivedCount = 0;
-
-            try (BufferedWriter writer = Files.newBufferedWriter(archivePath, StandardCharsets.UTF_8)) {
-                for (Map.Entry<String, UUID> entry : plugin.getCurrenciesManager().getNameUniqueIds().entrySet()) {
-
-                    String username = entry.getKey();
-                    UUID uuid = entry.getValue();
-
-                    try {
-                        AccountID accountID = new AccountID(uuid);
-                        final Map<Long, Transaction> transactionsMap = plugin.getCurrenciesManager()
-                                .getExchange()
-                                .getTransactions(accountID, Integer.MAX_VALUE)
-                                .toCompletableFuture()
-                                .join(); // Using join() is better in this context than get()
-
-                        if (transactionsMap.isEmpty()) {
-                            continue;
-                        }
-
-                        // Write account header
-                        writer.write(username);
-                        writer.write(';');
-                        writer.write(uuid.toString());
-                        writer.newLine();
-
-                        // Write transactions
-                        for (Transaction transaction : transactionsMap.values()) {
-                            writer.write(transaction.toString());
-                            writer.newLine();
-                        }
-
-                        // Add separator between accounts
-                        writer.newLine();
-
-                        // Report progress at regular intervals
-                        archivedCount++;
-                        if (archivedCount % 100 == 0 || archivedCount == totalAccounts) {
-                            int progressPercentage = (archivedCount * 100) / totalAccounts;
-                            plugin.getScheduler().runTask(() ->
-                                    plugin.langs().send(sender, plugin.langs().transactionsArchiveProgress
-                                            .replace("%progress%", String.valueOf(progressPercentage))));
-                        }
-                    } catch (Exception e) {
-                        plugin.getLogger().warning("Failed to archive transactions for " + username + ": " + e.getMessage());
-                    }
-                }
-            } catch (IOException e) {
-                plugin.getLogger().severe("Failed to write transaction archive: " + e.getMessage());
-            }
-
-            return archivedCount;
-        }).thenCompose(archivedCount -> {
-            if (archivedCount <= 0) {
-                return CompletableFuture.completedStage(archivedCount);
-            }
-
-            // Remove transactions only if archiving was successful
-            return plugin.getCurrenciesManager().getExchange().removeAllTransactions()
-                    .thenApply(deletedCount -> {
-                        plugin.getScheduler().runTask(() ->
-                                plugin.langs().send(sender, plugin.langs().transactionsArchiveCompleted
-                                        .replace("%size%", String.valueOf(deletedCount))
-                                        .replace("%file%", archivePath.getFileName().toString())));
-                        return archivedCount;
-                    });
-        });
-    }
-    
-    /**
-     * Deserializes a string into an array of transactions
-     *
-     * @param serialized The serialized transactions
-     * @return The deserialized transactions
-     */
-    private @NotNull Map<Integer, Transaction> getTransactionsFromSerialized(@Nullable Map<String, String> serialized) {
-        if (serialized == null)
-            return new HashMap<>();
-        Map<Integer, Transaction> transactions = new HashMap<>();
-        serialized.forEach((k, v) -> transactions.put(Integer.parseInt(k), Transaction.fromString(v)));
-        return transactions;
+        return new TransactionArchiver(plugin, redisManager, storage, plugin.settings().archiveParallelism)
+                .archive(outputPath, archivedCount -> plugin.getScheduler().runTask(() ->
+                        plugin.langs().send(sender, plugin.langs().transactionsArchiveProgress
+                                .replace("%progress%", String.valueOf(archivedCount)))))
+                .thenApply(archivedCount -> {
+                    plugin.getScheduler().runTask(() ->
+                            plugin.langs().send(sender, plugin.langs().transactionsArchiveCompleted
+                                    .replace("%size%", String.valueOf(archivedCount))
+                                    .replace("%file%", outputPath.getFileName().toString())));
+                    return archivedCount;
+                });
     }
 
     public String getCallerPluginString() {
@@ -407,6 +377,8 @@ public class EconomyExchange {
     }
 
     public void terminate() {
+        //The queued tasks still run and hand their transactions to the storage before the flush
+        executorService.shutdown();
         try {
             if (!executorService.awaitTermination(500, TimeUnit.MILLISECONDS)) {
                 executorService.shutdownNow();
@@ -414,6 +386,14 @@ public class EconomyExchange {
         } catch (InterruptedException e) {
             executorService.shutdownNow();
         }
+        //Queued transactions must reach Redis before the connections are closed
+        if (storage instanceof BatchingTransactionStorage batchingStorage) {
+            try {
+                batchingStorage.flush().get(plugin.settings().redis.timeout(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                plugin.getLogger().warning("Failed to save the queued transactions on shutdown: " + e.getMessage());
+            }
+        }
     }
 
 }
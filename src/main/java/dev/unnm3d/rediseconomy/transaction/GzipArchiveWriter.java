@@ -0,0 +1,51 @@
+package dev.unnm3d.rediseconomy.transaction;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip text archive: an account header line, a line for each transaction and an empty line after each account.
+ * Flushes are sync flushes, so everything flushed can be decompressed even if the archive is interrupted
+ */
+class GzipArchiveWriter implements ArchiveWriter {
+    private final BufferedWriter writer;
+
+    GzipArchiveWriter(Path archivePath) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(archivePath), true), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void writeAccount(AccountID accountId, String name, TreeMap<Long, Transaction> transactions) throws IOException {
+        writer.write(name);
+        writer.write(';');
+        writer.write(accountId.toString());
+        writer.newLine();
+        for (Transaction transaction : transactions.values()) {
+            writer.write(transaction.toString());
+            writer.newLine();
+        }
+        writer.newLine();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public boolean isReadableAfterFlush() {
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
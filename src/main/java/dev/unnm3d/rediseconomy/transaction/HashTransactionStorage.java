@@ -0,0 +1,179 @@
+package dev.unnm3d.rediseconomy.transaction;
+
+import dev.unnm3d.rediseconomy.RedisEconomyPlugin;
+import dev.unnm3d.rediseconomy.redis.RedisKeys;
+import dev.unnm3d.rediseconomy.redis.RedisManager;
+import dev.unnm3d.rediseconomy.redis.RedisScript;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.ScoredValue;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.ZAddArgs;
+import lombok.AllArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Stores the transactions of each account in a hash, keyed by transaction id,
+ * and indexes them by timestamp in a sorted set of the account.
+ * The TTL relies on HEXPIRE (Redis 7.4+)
+ */
+@AllArgsConstructor
+public class HashTransactionStorage implements TransactionStorage {
+    /**
+     * KEYS: the hash and the time index of each transaction
+     * ARGV: the TTL, then the id, the serialized transaction and the timestamp of each transaction
+     * With a TTL, index entries older than the TTL are trimmed since they can't expire on their own
+     */
+    private static final RedisScript SAVE_SCRIPT = new RedisScript("local t=tonumber(ARGV[1])for i=1,#KEYS/2 do " +
+            "local h,z,a,s=KEYS[2*i-1],KEYS[2*i],ARGV[3*i-1],ARGV[3*i+1]" +
+            "redis.call('hset',h,a,ARGV[3*i])redis.call('zadd',z,s,a)" +
+            "if t>0 then redis.call('hexpire',h,t,'FIELDS',1,a)" +
+            "redis.call('zremrangebyscore',z,'-inf','('..(tonumber(s)-t*1000))redis.call('expire',z,t)end end return #KEYS/2");
+    private static final int SCAN_COUNT = 1000;
+    private final RedisManager redisManager;
+    private final TransactionIdAllocator idAllocator;
+    /**
+     * If new transactions are saved with the binary format
+     */
+    private final boolean binaryFormat;
+
+    @Override
+    public CompletionStage<List<Long>> saveTransactions(@NotNull List<Transaction> transactions, long ttlSeconds) {
+        return idAllocator.allocate(transactions.size()).thenCompose(ids -> {
+            final byte[][] keys = new byte[transactions.size() * 2][];
+            final byte[][] args = new byte[transactions.size() * 3 + 1][];
+            args[0] = LedgerBytes.of(ttlSeconds);
+            for (int i = 0; i < transactions.size(); i++) {
+                final Transaction transaction = transactions.get(i);
+                keys[i * 2] = LedgerBytes.of(RedisKeys.TRANSACTIONS + transaction.getAccountIdentifier().toString()); //Key rediseco:transactions:playerUUID
+                keys[i * 2 + 1] = LedgerBytes.of(RedisKeys.TRANSACTIONS_TIME_INDEX + transaction.getAccountIdentifier().toString());
+                args[i * 3 + 1] = LedgerBytes.of(ids.get(i));
+                args[i * 3 + 2] = LedgerBytes.encode(transaction, binaryFormat);
+                args[i * 3 + 3] = LedgerBytes.of(transaction.getTimestamp());
+            }
+            return redisManager.getBinaryConnectionAsync(commands -> SAVE_SCRIPT.<byte[], byte[], Long>eval(commands, ScriptOutputType.INTEGER, keys, args))
+                    .thenApply(saved -> ids);
+        });
+    }
+
+    @Override
+    public CompletionStage<LinkedHashMap<Long, Transaction>> getTransactions(@NotNull AccountID accountId, int limit) {
+        //Ids are leased in blocks by each instance and don't follow time, the time index does
+        return getTransactions(accountId, 0, Long.MAX_VALUE, null, limit).thenApply(TransactionPage::transactions);
+    }
+
+    @Override
+    public CompletionStage<Transaction> getTransaction(@NotNull AccountID accountId, long id) {
+        return redisManager.getBinaryConnectionAsync(connection ->
+                        connection.hget(LedgerBytes.of(RedisKeys.TRANSACTIONS + accountId.toString()), LedgerBytes.of(id)))
+                .thenApply(serialized -> serialized == null ? null : Transaction.fromBytes(serialized));
+    }
+
+    @Override
+    public CompletionStage<TransactionPage> getTransactions(@NotNull AccountID accountId, long from, long to, @Nullable TransactionCursor cursor, int pageSize) {
+        if (cursor != null) {
+            return getIndexedTransactions(accountId, from, to, cursor, pageSize);
+        }
+        return indexLegacyTransactions(accountId)
+                .thenCompose(indexed -> getIndexedTransactions(accountId, from, to, cursor, pageSize));
+    }
+
+    private CompletionStage<TransactionPage> getIndexedTransactions(AccountID accountId, long from, long to, @Nullable TransactionCursor cursor, int pageSize) {
+        return redisManager.getBinaryConnectionAsync(connection ->
+                TimeIndex.page(connection, accountId, from, to, cursor, pageSize)
+                        .thenCompose(slice -> {
+                            final List<byte[]> ids = slice.ids();
+                            if (ids.isEmpty()) {
+                                return CompletableFuture.completedFuture(TransactionPage.empty());
+                            }
+                            return connection.hmget(LedgerBytes.of(RedisKeys.TRANSACTIONS + accountId.toString()), ids.toArray(new byte[0][]))
+                                    .thenApply(values -> {
+                                        final LinkedHashMap<Long, Transaction> transactionsMap = new LinkedHashMap<>();
+                                        for (KeyValue<byte[], byte[]> value : values) {
+                                            //Expired fields are still in the index until the next save trims them
+                                            if (value.hasValue()) {
+                                                transactionsMap.put(LedgerBytes.toLong(value.getKey()), Transaction.fromBytes(value.getValue()));
+                                            }
+                                        }
+                                        return new TransactionPage(transactionsMap, slice.nextCursor());
+                                    });
+                        }));
+    }
+
+    /**
+     * Transactions saved before the time index existed are missing from it.
+     * They are added the first time the account is browsed, when the hash has more fields than the index
+     *
+     * @return How many transactions were added to the index
+     */
+    @SuppressWarnings("unchecked")
+    private CompletionStage<Long> indexLegacyTransactions(AccountID accountId) {
+        final byte[] hashKey = LedgerBytes.of(RedisKeys.TRANSACTIONS + accountId.toString());
+        final byte[] indexKey = LedgerBytes.of(RedisKeys.TRANSACTIONS_TIME_INDEX + accountId.toString());
+        return redisManager.getBinaryConnectionAsync(connection ->
+                        connection.hlen(hashKey).thenCombine(connection.zcard(indexKey), (fields, indexed) -> fields > indexed))
+                .thenCompose(missing -> {
+                    if (!missing) return CompletableFuture.completedFuture(0L);
+                    return getAllTransactions(accountId).thenCompose(transactions -> {
+                        if (transactions.isEmpty()) return CompletableFuture.completedFuture(0L);
+                        final ScoredValue<byte[]>[] entries = transactions.entrySet().stream()
+                                .map(entry -> ScoredValue.just(entry.getValue().getTimestamp(), LedgerBytes.of(entry.getKey())))
+                                .toArray(ScoredValue[]::new);
+                        //NX keeps the scores of the transactions that are already indexed
+                        return redisManager.getBinaryConnectionAsync(connection -> connection.zadd(indexKey, ZAddArgs.Builder.nx(), entries))
+                                .thenApply(added -> {
+                                    RedisEconomyPlugin.debug("Indexed " + added + " legacy transactions of " + accountId);
+                                    return added;
+                                });
+                    });
+                });
+    }
+
+    @Override
+    public CompletionStage<Boolean> updateTransaction(@NotNull AccountID accountId, long id, @NotNull Transaction transaction) {
+        return redisManager.getBinaryConnectionAsync(connection ->
+                connection.hset(LedgerBytes.of(RedisKeys.TRANSACTIONS + accountId.toString()), LedgerBytes.of(id),
+                        LedgerBytes.encode(transaction, binaryFormat)));
+    }
+
+    @Override
+    public String getAccountKeyPrefix() {
+        return RedisKeys.TRANSACTIONS.toString();
+    }
+
+    @Override
+    public CompletionStage<TreeMap<Long, Transaction>> getAllTransactions(@NotNull AccountID accountId) {
+        return scanTransactions(LedgerBytes.of(RedisKeys.TRANSACTIONS + accountId.toString()), ScanCursor.INITIAL, new TreeMap<>());
+    }
+
+    private CompletionStage<TreeMap<Long, Transaction>> scanTransactions(byte[] key, ScanCursor cursor, TreeMap<Long, Transaction> transactionsMap) {
+        return redisManager.getBinaryConnectionAsync(connection -> connection.hscan(key, cursor, ScanArgs.Builder.limit(SCAN_COUNT)))
+                .thenCompose(result -> {
+                    result.getMap().forEach((id, transaction) -> transactionsMap.put(LedgerBytes.toLong(id), Transaction.fromBytes(transaction)));
+                    return result.isFinished() ?
+                            CompletableFuture.completedFuture(transactionsMap) :
+                            scanTransactions(key, result, transactionsMap);
+                });
+    }
+
+    @Override
+    public CompletionStage<Long> removeTransactions(@NotNull AccountID accountId, @NotNull Collection<Long> ids) {
+        if (ids.isEmpty()) return CompletableFuture.completedFuture(0L);
+        final byte[][] fields = ids.stream().map(LedgerBytes::of).toArray(byte[][]::new);
+        return redisManager.getBinaryConnectionPipeline(connection -> {
+            connection.zrem(LedgerBytes.of(RedisKeys.TRANSACTIONS_TIME_INDEX + accountId.toString()), fields);
+            return connection.hdel(LedgerBytes.of(RedisKeys.TRANSACTIONS + accountId.toString()), fields);
+        });
+    }
+
+    @Override
+    public List<String> getKeyPatterns() {
+        return List.of(RedisKeys.TRANSACTIONS + "*", RedisKeys.TRANSACTIONS_TIME_INDEX + "*");
+    }
+}
@@ -0,0 +1,118 @@
+package dev.unnm3d.rediseconomy.transaction;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/**
+ * Reads an indexed transaction archive without loading it: the index is memory-mapped and binary searched,
+ * then only the records and the reasons of the requested account are mapped.
+ * <p>
+ * Layout, big-endian:
+ * <ul>
+ *     <li>Records: transaction id, the fixed width fields of the binary transaction format, reason offset and length.
+ *     The records of an account are contiguous and sorted by id</li>
+ *     <li>Reasons: UTF-8, in the same order as the records</li>
+ *     <li>Index: account identifier, first record and record count of each account, sorted by account identifier</li>
+ *     <li>Footer: reasons offset, index offset, index size, record count and magic number</li>
+ * </ul>
+ */
+public class IndexedArchiveReader implements AutoCloseable {
+    public static final String EXTENSION = ".rtx";
+    static final int MAGIC = 0x52545831;
+    static final int RECORD_SIZE = 8 + Transaction.FIXED_FIELDS_SIZE + 8 + 4;
+    private static final int INDEX_ENTRY_SIZE = Transaction.IDENTIFIER_SIZE + 8 + 4;
+    private static final int FOOTER_SIZE = 8 + 8 + 4 + 8 + 4;
+    private final FileChannel channel;
+    private final MappedByteBuffer index;
+    private final int indexSize;
+    private final long reasonsOffset;
+
+    public IndexedArchiveReader(@NotNull Path archivePath) throws IOException {
+        this.channel = FileChannel.open(archivePath, StandardOpenOption.READ);
+        try {
+            final long size = channel.size();
+            if (size < FOOTER_SIZE) {
+                throw new IOException("Not a transaction archive: " + archivePath.getFileName());
+            }
+            final MappedByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, size - FOOTER_SIZE, FOOTER_SIZE);
+            this.reasonsOffset = footer.getLong();
+            final long indexOffset = footer.getLong();
+            this.indexSize = footer.getInt();
+            footer.getLong();
+            if (footer.getInt() != MAGIC) {
+                throw new IOException("Not a transaction archive: " + archivePath.getFileName());
+            }
+            this.index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, (long) indexSize * INDEX_ENTRY_SIZE);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param accountId The account id
+     * @return The archived transactions of the account by id, empty if the account is not in the archive
+     * @throws IOException If the archive can't be read
+     */
+    public TreeMap<Long, Transaction> getTransactions(@NotNull AccountID accountId) throws IOException {
+        final ByteBuffer key = ByteBuffer.allocate(Transaction.IDENTIFIER_SIZE);
+        Transaction.writeIdentifier(key, accountId);
+        final byte[] entryKey = new byte[Transaction.IDENTIFIER_SIZE];
+
+        int low = 0;
+        int high = indexSize - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            index.get(middle * INDEX_ENTRY_SIZE, entryKey);
+            final int comparison = Arrays.compareUnsigned(entryKey, key.array());
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                final int position = middle * INDEX_ENTRY_SIZE + Transaction.IDENTIFIER_SIZE;
+                return readRecords(index.getLong(position), index.getInt(position + 8));
+            }
+        }
+        return new TreeMap<>();
+    }
+
+    private TreeMap<Long, Transaction> readRecords(long firstRecord, int recordCount) throws IOException {
+        final TreeMap<Long, Transaction> transactions = new TreeMap<>();
+        if (recordCount == 0) return transactions;
+        final MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY,
+                firstRecord * RECORD_SIZE, (long) recordCount * RECORD_SIZE);
+
+        //The reasons of an account are contiguous, they are mapped at once
+        final int reasonsField = 8 + Transaction.FIXED_FIELDS_SIZE;
+        final long firstReason = records.getLong(reasonsField);
+        final int lastRecord = (recordCount - 1) * RECORD_SIZE;
+        final long reasonsEnd = records.getLong(lastRecord + reasonsField) + records.getInt(lastRecord + reasonsField + 8);
+        final MappedByteBuffer reasons = channel.map(FileChannel.MapMode.READ_ONLY,
+                reasonsOffset + firstReason, reasonsEnd - firstReason);
+
+        for (int i = 0; i < recordCount; i++) {
+            final int position = i * RECORD_SIZE;
+            final byte[] reason = new byte[records.getInt(position + reasonsField + 8)];
+            reasons.get((int) (records.getLong(position + reasonsField) - firstReason), reason);
+            transactions.put(records.getLong(position),
+                    Transaction.readFixedFields(records.slice(position + 8, Transaction.FIXED_FIELDS_SIZE),
+                            new String(reason, StandardCharsets.UTF_8)));
+        }
+        return transactions;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
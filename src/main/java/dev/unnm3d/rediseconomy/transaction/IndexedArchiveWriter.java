@@ -0,0 +1,97 @@
+package dev.unnm3d.rediseconomy.transaction;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Writes the indexed archive format read by {@link IndexedArchiveReader}.
+ * Records are streamed to the archive and reasons to a temporary file, which is appended with the index and the footer on close
+ */
+class IndexedArchiveWriter implements ArchiveWriter {
+    private final Path reasonsPath;
+    private final DataOutputStream records;
+    private final OutputStream reasons;
+    private final Map<ByteBuffer, IndexEntry> index;
+    private final ByteBuffer recordBuffer;
+    private long recordCount;
+    private long reasonsSize;
+
+    IndexedArchiveWriter(Path archivePath) throws IOException {
+        this.reasonsPath = archivePath.resolveSibling(archivePath.getFileName() + ".reasons.tmp");
+        this.records = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(archivePath)));
+        this.reasons = new BufferedOutputStream(Files.newOutputStream(reasonsPath));
+        this.index = new HashMap<>();
+        this.recordBuffer = ByteBuffer.allocate(IndexedArchiveReader.RECORD_SIZE);
+    }
+
+    @Override
+    public void writeAccount(AccountID accountId, String name, TreeMap<Long, Transaction> transactions) throws IOException {
+        final ByteBuffer key = ByteBuffer.allocate(Transaction.IDENTIFIER_SIZE);
+        Transaction.writeIdentifier(key, accountId);
+        key.flip();
+        //SCAN can return a key twice, the account is already archived
+        if (index.containsKey(key)) return;
+        index.put(key, new IndexEntry(key.array(), recordCount, transactions.size()));
+
+        for (Map.Entry<Long, Transaction> entry : transactions.entrySet()) {
+            final byte[] reasonBytes = entry.getValue().getReason().getBytes(StandardCharsets.UTF_8);
+            recordBuffer.clear();
+            recordBuffer.putLong(entry.getKey());
+            entry.getValue().writeFixedFields(recordBuffer);
+            recordBuffer.putLong(reasonsSize);
+            recordBuffer.putInt(reasonBytes.length);
+            records.write(recordBuffer.array());
+            reasons.write(reasonBytes);
+            reasonsSize += reasonBytes.length;
+            recordCount++;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        records.flush();
+        reasons.flush();
+    }
+
+    @Override
+    public boolean isReadableAfterFlush() {
+        //The index is only written on close
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reasons.close();
+            Files.copy(reasonsPath, records);
+
+            final List<IndexEntry> sortedIndex = new ArrayList<>(index.values());
+            sortedIndex.sort((first, second) -> Arrays.compareUnsigned(first.key(), second.key()));
+            for (IndexEntry entry : sortedIndex) {
+                records.write(entry.key());
+                records.writeLong(entry.firstRecord());
+                records.writeInt(entry.recordCount());
+            }
+
+            final long reasonsOffset = recordCount * IndexedArchiveReader.RECORD_SIZE;
+            records.writeLong(reasonsOffset);
+            records.writeLong(reasonsOffset + reasonsSize);
+            records.writeInt(sortedIndex.size());
+            records.writeLong(recordCount);
+            records.writeInt(IndexedArchiveReader.MAGIC);
+        } finally {
+            records.close();
+            Files.deleteIfExists(reasonsPath);
+        }
+    }
+
+    private record IndexEntry(byte[] key, long firstRecord, int recordCount) {
+    }
+}
@@ -0,0 +1,43 @@
+package dev.unnm3d.rediseconomy.transaction;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Conversions used by the transaction storages on byte array connections
+ */
+final class LedgerBytes {
+
+    private LedgerBytes() {
+    }
+
+    static byte[] of(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] of(long number) {
+        return of(String.valueOf(number));
+    }
+
+    /**
+     * Parse an ASCII decimal number without creating a String
+     */
+    static long toLong(byte[] bytes) {
+        long result = 0;
+        int i = 0;
+        final boolean negative = bytes.length > 0 && bytes[0] == '-';
+        if (negative) i++;
+        for (; i < bytes.length; i++) {
+            result = result * 10 + (bytes[i] - '0');
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * @param transaction The transaction to encode
+     * @param binary      If the binary format should be used, otherwise the legacy string format
+     * @return The serialized transaction
+     */
+    static byte[] encode(Transaction transaction, boolean binary) {
+        return binary ? transaction.toBytes() : of(transaction.toString());
+    }
+}
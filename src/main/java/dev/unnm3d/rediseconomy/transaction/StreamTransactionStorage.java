@@ -0,0 +1,192 @@
+package dev.unnm3d.rediseconomy.transaction;
+
+import dev.unnm3d.rediseconomy.redis.RedisKeys;
+import dev.unnm3d.rediseconomy.redis.RedisManager;
+import dev.unnm3d.rediseconomy.redis.RedisScript;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.Limit;
+import io.lettuce.core.Range;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.StreamMessage;
+import lombok.AllArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Stores the transactions of each account in a stream, using the transaction id as entry id.
+ * Ids are leased in blocks by each instance, so an id lower than the last entry of the stream is raised above it.
+ * Streams are trimmed to about maxLength entries on every write, so retention doesn't need HEXPIRE.
+ * Transactions are also indexed by timestamp in a sorted set of the account, trimmed together with the stream.
+ * Entries can't be edited, so the revert marks are kept in a separate hash of the account
+ */
+@AllArgsConstructor
+public class StreamTransactionStorage implements TransactionStorage {
+    private static final String FIELD = "t";
+    private static final int RANGE_COUNT = 1000;
+    /**
+     * KEYS: the stream and the time index of each transaction
+     * ARGV: the TTL, the max stream length, then the id, the serialized transaction and the timestamp of each transaction
+     * Returns the ids the transactions were saved with: an id not above the last id of the stream is replaced by the next one.
+     * The TTL expires the whole stream after that time without new transactions.
+     * The time index is trimmed back to the stream length once it grows past twice the max length
+     */
+    private static final RedisScript SAVE_SCRIPT = new RedisScript("local r={}local t=tonumber(ARGV[1])local m=ARGV[2]for i=1,#KEYS/2 do " +
+            "local x,z,a,s=KEYS[2*i-1],KEYS[2*i],tonumber(ARGV[3*i]),ARGV[3*i+2]" +
+            "if redis.call('exists',x)==1 then local f=redis.call('xinfo','stream',x)for j=1,#f,2 do " +
+            "if f[j]=='last-generated-id' then local l=tonumber(string.match(f[j+1],'^%d+'))if a<=l then a=l+1 end end end end " +
+            "redis.call('xadd',x,'MAXLEN','~',m,a..'-0','" + FIELD + "',ARGV[3*i+1])redis.call('zadd',z,s,a)" +
+            "local c=redis.call('zcard',z)if c>tonumber(m)*2 then redis.call('zremrangebyrank',z,0,c-redis.call('xlen',x)-1)end " +
+            "if t>0 then redis.call('expire',x,t)redis.call('expire',z,t)end r[i]=a end return r");
+    private final RedisManager redisManager;
+    private final TransactionIdAllocator idAllocator;
+    private final long maxLength;
+    /**
+     * If new transactions are saved with the binary format
+     */
+    private final boolean binaryFormat;
+
+    @Override
+    public CompletionStage<List<Long>> saveTransactions(@NotNull List<Transaction> transactions, long ttlSeconds) {
+        return idAllocator.allocate(transactions.size()).thenCompose(ids -> {
+            final byte[][] keys = new byte[transactions.size() * 2][];
+            final byte[][] args = new byte[transactions.size() * 3 + 2][];
+            args[0] = LedgerBytes.of(ttlSeconds);
+            args[1] = LedgerBytes.of(maxLength);
+            for (int i = 0; i < transactions.size(); i++) {
+                final Transaction transaction = transactions.get(i);
+                keys[i * 2] = LedgerBytes.of(RedisKeys.TRANSACTIONS_STREAM + transaction.getAccountIdentifier().toString());
+                keys[i * 2 + 1] = LedgerBytes.of(RedisKeys.TRANSACTIONS_TIME_INDEX + transaction.getAccountIdentifier().toString());
+                args[i * 3 + 2] = LedgerBytes.of(ids.get(i));
+                args[i * 3 + 3] = LedgerBytes.encode(transaction, binaryFormat);
+                args[i * 3 + 4] = LedgerBytes.of(transaction.getTimestamp());
+            }
+            return redisManager.getBinaryConnectionAsync(commands -> SAVE_SCRIPT.<byte[], byte[], List<Long>>eval(commands, ScriptOutputType.MULTI, keys, args));
+        });
+    }
+
+    @Override
+    public CompletionStage<LinkedHashMap<Long, Transaction>> getTransactions(@NotNull AccountID accountId, int limit) {
+        //Entry ids are leased in blocks by each instance and don't follow time, the time index does
+        return getTransactions(accountId, 0, Long.MAX_VALUE, null, limit).thenApply(TransactionPage::transactions);
+    }
+
+    @Override
+    public CompletionStage<Transaction> getTransaction(@NotNull AccountID accountId, long id) {
+        final String entryId = id + "-0";
+        return redisManager.getBinaryConnectionPipeline(connection -> {
+            final CompletionStage<byte[]> revertedWith = connection.hget(LedgerBytes.of(RedisKeys.TRANSACTIONS_REVERTS + accountId.toString()), LedgerBytes.of(id));
+            return connection.xrange(LedgerBytes.of(RedisKeys.TRANSACTIONS_STREAM + accountId.toString()), Range.create(entryId, entryId))
+                    .thenCombine(revertedWith, (messages, revertMark) ->
+                            messages.isEmpty() ? null : parseTransaction(messages.getFirst(),
+                                    revertMark == null ? null : new String(revertMark, StandardCharsets.UTF_8)));
+        });
+    }
+
+    @Override
+    public CompletionStage<TransactionPage> getTransactions(@NotNull AccountID accountId, long from, long to, @Nullable TransactionCursor cursor, int pageSize) {
+        final byte[] streamKey = LedgerBytes.of(RedisKeys.TRANSACTIONS_STREAM + accountId.toString());
+        return redisManager.getBinaryConnectionAsync(connection ->
+                TimeIndex.page(connection, accountId, from, to, cursor, pageSize)
+                        .thenCompose(slice -> {
+                            final List<byte[]> ids = slice.ids();
+                            if (ids.isEmpty()) {
+                                return CompletableFuture.completedFuture(TransactionPage.empty());
+                            }
+                            return redisManager.getBinaryConnectionPipeline(pipeline -> {
+                                final CompletionStage<List<KeyValue<byte[], byte[]>>> reverts = pipeline.hmget(
+                                        LedgerBytes.of(RedisKeys.TRANSACTIONS_REVERTS + accountId.toString()), ids.toArray(new byte[0][]));
+                                final List<CompletableFuture<List<StreamMessage<byte[], byte[]>>>> entries = new ArrayList<>(ids.size());
+                                for (byte[] id : ids) {
+                                    final String entryId = LedgerBytes.toLong(id) + "-0";
+                                    entries.add(pipeline.xrange(streamKey, Range.create(entryId, entryId)).toCompletableFuture());
+                                }
+                                return CompletableFuture.allOf(entries.toArray(new CompletableFuture[0]))
+                                        .thenCombine(reverts, (ignored, revertMarks) -> {
+                                            final LinkedHashMap<Long, Transaction> transactionsMap = new LinkedHashMap<>();
+                                            for (int i = 0; i < entries.size(); i++) {
+                                                final List<StreamMessage<byte[], byte[]>> messages = entries.get(i).join();
+                                                //Entries trimmed from the stream may still be in the index
+                                                if (messages.isEmpty()) continue;
+                                                final KeyValue<byte[], byte[]> revertMark = revertMarks.get(i);
+                                                transactionsMap.put(LedgerBytes.toLong(ids.get(i)), parseTransaction(messages.getFirst(),
+                                                        revertMark.hasValue() ? new String(revertMark.getValue(), StandardCharsets.UTF_8) : null));
+                                            }
+                                            return new TransactionPage(transactionsMap, slice.nextCursor());
+                                        });
+                            });
+                        }));
+    }
+
+    @Override
+    public CompletionStage<Boolean> updateTransaction(@NotNull AccountID accountId, long id, @NotNull Transaction transaction) {
+        return redisManager.getConnectionAsync(connection ->
+                connection.hset(RedisKeys.TRANSACTIONS_REVERTS + accountId.toString(), String.valueOf(id),
+                        String.valueOf(transaction.getRevertedWith())));
+    }
+
+    @Override
+    public String getAccountKeyPrefix() {
+        return RedisKeys.TRANSACTIONS_STREAM.toString();
+    }
+
+    @Override
+    public CompletionStage<TreeMap<Long, Transaction>> getAllTransactions(@NotNull AccountID accountId) {
+        final byte[] streamKey = LedgerBytes.of(RedisKeys.TRANSACTIONS_STREAM + accountId.toString());
+        return rangeTransactions(streamKey, Range.Boundary.unbounded(), new TreeMap<>())
+                .thenCompose(transactionsMap -> redisManager.getBinaryConnectionAsync(connection ->
+                                connection.hgetall(LedgerBytes.of(RedisKeys.TRANSACTIONS_REVERTS + accountId.toString())))
+                        .thenApply(revertMarks -> {
+                            revertMarks.forEach((id, mark) -> {
+                                final Transaction transaction = transactionsMap.get(LedgerBytes.toLong(id));
+                                if (transaction != null) transaction.setRevertedWith(new String(mark, StandardCharsets.UTF_8));
+                            });
+                            return transactionsMap;
+                        }));
+    }
+
+    private CompletionStage<TreeMap<Long, Transaction>> rangeTransactions(byte[] streamKey, Range.Boundary<String> lower, TreeMap<Long, Transaction> transactionsMap) {
+        return redisManager.getBinaryConnectionAsync(connection ->
+                        connection.xrange(streamKey, Range.from(lower, Range.Boundary.unbounded()), Limit.from(RANGE_COUNT)))
+                .thenCompose(messages -> {
+                    for (StreamMessage<byte[], byte[]> message : messages) {
+                        transactionsMap.put(parseId(message.getId()), parseTransaction(message, null));
+                    }
+                    return messages.size() < RANGE_COUNT ?
+                            CompletableFuture.completedFuture(transactionsMap) :
+                            rangeTransactions(streamKey, Range.Boundary.excluding(messages.getLast().getId()), transactionsMap);
+                });
+    }
+
+    @Override
+    public CompletionStage<Long> removeTransactions(@NotNull AccountID accountId, @NotNull Collection<Long> ids) {
+        if (ids.isEmpty()) return CompletableFuture.completedFuture(0L);
+        final byte[][] fields = ids.stream().map(LedgerBytes::of).toArray(byte[][]::new);
+        return redisManager.getBinaryConnectionPipeline(connection -> {
+            connection.zrem(LedgerBytes.of(RedisKeys.TRANSACTIONS_TIME_INDEX + accountId.toString()), fields);
+            connection.hdel(LedgerBytes.of(RedisKeys.TRANSACTIONS_REVERTS + accountId.toString()), fields);
+            return connection.xdel(LedgerBytes.of(RedisKeys.TRANSACTIONS_STREAM + accountId.toString()),
+                    ids.stream().map(id -> id + "-0").toArray(String[]::new));
+        });
+    }
+
+    @Override
+    public List<String> getKeyPatterns() {
+        return List.of(RedisKeys.TRANSACTIONS_STREAM + "*", RedisKeys.TRANSACTIONS_REVERTS + "*", RedisKeys.TRANSACTIONS_TIME_INDEX + "*");
+    }
+
+    private static long parseId(String entryId) {
+        return Long.parseLong(entryId.substring(0, entryId.indexOf('-')));
+    }
+
+    private static Transaction parseTransaction(StreamMessage<byte[], byte[]> message, String revertedWith) {
+        //Entries have a single field, byte array keys can't be looked up by value
+        final Transaction transaction = Transaction.fromBytes(message.getBody().values().iterator().next());
+        if (revertedWith != null) transaction.setRevertedWith(revertedWith);
+        return transaction;
+    }
+}
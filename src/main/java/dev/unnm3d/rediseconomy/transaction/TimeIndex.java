@@ -0,0 +1,81 @@
+package dev.unnm3d.rediseconomy.transaction;
+
+import dev.unnm3d.rediseconomy.redis.RedisKeys;
+import io.lettuce.core.Limit;
+import io.lettuce.core.Range;
+import io.lettuce.core.ScoredValue;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Reads the time index of an account (score: timestamp, member: transaction id) one page at a time, newest first.
+ * Redis orders members with the same score by their bytes, descending, so (timestamp, id bytes) is a total order
+ */
+final class TimeIndex {
+
+    private TimeIndex() {
+    }
+
+    /**
+     * @param ids        The transaction ids of the page, newest first
+     * @param nextCursor The cursor of the next page, or null if this is the last page
+     */
+    record Slice(List<byte[]> ids, @Nullable TransactionCursor nextCursor) {
+    }
+
+    /**
+     * Read the ids of the page after the cursor.
+     * Only the transactions sharing the cursor timestamp are read besides the page itself,
+     * so the cost doesn't grow with the page depth
+     *
+     * @param connection The binary connection
+     * @param accountId  The account id
+     * @param from       The minimum timestamp, inclusive
+     * @param to         The maximum timestamp, inclusive
+     * @param cursor     The cursor of the previous page, null for the first page
+     * @param pageSize   The maximum number of ids
+     * @return The ids of the page and the next cursor
+     */
+    static CompletionStage<Slice> page(RedisAsyncCommands<byte[], byte[]> connection, AccountID accountId, long from, long to, @Nullable TransactionCursor cursor, int pageSize) {
+        final byte[] key = LedgerBytes.of(RedisKeys.TRANSACTIONS_TIME_INDEX + accountId.toString());
+        if (cursor == null || cursor.timestamp() > to) {
+            return connection.zrevrangebyscoreWithScores(key, Range.create(from, to), Limit.create(0, pageSize))
+                    .thenApply(entries -> slice(new ArrayList<>(entries), pageSize));
+        }
+        if (cursor.timestamp() < from) {
+            return CompletableFuture.completedFuture(new Slice(List.of(), null));
+        }
+        final byte[] lastId = LedgerBytes.of(cursor.id());
+        //Both commands are written together on the connection
+        final CompletionStage<List<byte[]>> sameTimestamp = connection.zrevrangebyscore(key, Range.create(cursor.timestamp(), cursor.timestamp()));
+        final CompletionStage<List<ScoredValue<byte[]>>> older = connection.zrevrangebyscoreWithScores(key,
+                Range.from(Range.Boundary.including(from), Range.Boundary.excluding(cursor.timestamp())), Limit.create(0, pageSize));
+        return sameTimestamp.thenCombine(older, (ties, entries) -> {
+            final List<ScoredValue<byte[]>> page = new ArrayList<>(pageSize);
+            for (byte[] id : ties) {
+                //Ties come in descending id bytes: the ones after the cursor sort below it
+                if (Arrays.compareUnsigned(id, lastId) < 0) {
+                    page.add(ScoredValue.just(cursor.timestamp(), id));
+                }
+            }
+            page.addAll(entries);
+            return slice(page, pageSize);
+        });
+    }
+
+    private static Slice slice(List<ScoredValue<byte[]>> entries, int pageSize) {
+        if (entries.size() < pageSize) {
+            return new Slice(entries.stream().map(ScoredValue::getValue).toList(), null);
+        }
+        final List<ScoredValue<byte[]>> page = entries.subList(0, pageSize);
+        final ScoredValue<byte[]> last = page.getLast();
+        return new Slice(page.stream().map(ScoredValue::getValue).toList(),
+                new TransactionCursor((long) last.getScore(), LedgerBytes.toLong(last.getValue())));
+    }
+}
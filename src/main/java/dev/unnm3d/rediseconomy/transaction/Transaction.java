@@ -7,6 +7,7 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.UUID;
@@ -15,6 +16,24 @@ import java.util.UUID;
 @AllArgsConstructor
 @Getter
 public class Transaction {
+    /**
+     * First byte of the binary format, legacy strings start with an account marker instead
+     */
+    private static final byte BINARY_VERSION = 1;
+    /**
+     * Account, actor, timestamp, amount, currency and revertedWith: the fixed width fields of the binary format
+     */
+    static final int FIXED_FIELDS_SIZE = 17 + 17 + 8 + 8 + 8 + 8;
+    /**
+     * Size of an account identifier in the binary format
+     */
+    static final int IDENTIFIER_SIZE = 17;
+    /**
+     * Version, fixed width fields and reason length
+     */
+    private static final int BINARY_HEADER_SIZE = 1 + FIXED_FIELDS_SIZE + 4;
+    private static final byte PLAYER_MARKER = (byte) '§';
+    private static final byte NON_PLAYER_MARKER = (byte) '^';
     /**
      * The identifier of the account this transaction belongs to
      */
@@ -63,6 +82,69 @@ public class Transaction {
         return new Transaction(accountID, actorID, currencyName, timestamp, amount, revertedWith == 0 ? null : String.valueOf(revertedWith), reason);
     }
 
+    /**
+     * Decodes a transaction from its binary format, reading the fields in place from the array.
+     * Transactions saved as legacy strings are decoded with {@link #fromString(String)}
+     *
+     * @param serializedTransaction The serialized transaction
+     * @return The transaction created from the bytes
+     */
+    public static Transaction fromBytes(byte[] serializedTransaction) {
+        if (serializedTransaction.length == 0 || serializedTransaction[0] != BINARY_VERSION) {
+            //Legacy transactions are Latin-1 strings saved through the UTF-8 string codec
+            return fromString(new String(serializedTransaction, StandardCharsets.UTF_8));
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(serializedTransaction, 1, serializedTransaction.length - 1);
+        final ByteBuffer fixedFields = buffer.slice(buffer.position(), FIXED_FIELDS_SIZE);
+        buffer.position(buffer.position() + FIXED_FIELDS_SIZE);
+        final int reasonLength = buffer.getInt();
+        return readFixedFields(fixedFields, new String(serializedTransaction, buffer.position(), reasonLength, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read the fixed width fields of the binary format, advancing the buffer
+     *
+     * @param buffer The buffer positioned on the fixed width fields
+     * @param reason The reason of the transaction, stored separately
+     * @return The transaction
+     */
+    static Transaction readFixedFields(ByteBuffer buffer, String reason) {
+        final AccountID accountID = readIdentifier(buffer);
+        final AccountID actorID = readIdentifier(buffer);
+        final long timestamp = buffer.getLong();
+        final double amount = buffer.getDouble();
+        final String currencyName = readPadded(buffer, 8, StandardCharsets.ISO_8859_1);
+        final long revertedWith = buffer.getLong();
+
+        return new Transaction(accountID, actorID, currencyName, timestamp, amount, revertedWith == 0 ? null : String.valueOf(revertedWith), reason);
+    }
+
+    private static AccountID readIdentifier(ByteBuffer buffer) {
+        final byte marker = buffer.get();
+        if (marker == PLAYER_MARKER) {
+            return new AccountID(buffer.getLong(), buffer.getLong());
+        } else if (marker == NON_PLAYER_MARKER) {
+            return new AccountID(readPadded(buffer, 16, StandardCharsets.UTF_8));
+        }
+        throw new IllegalArgumentException("Invalid account identifier marker: " + marker);
+    }
+
+    /**
+     * Read a fixed width string, ignoring the padding null bytes
+     */
+    private static String readPadded(ByteBuffer buffer, int width, Charset charset) {
+        final int start = buffer.position();
+        int length = 0;
+        while (length < width && buffer.get(start + length) != 0) {
+            length++;
+        }
+        //Copied out, memory-mapped buffers have no backing array
+        final byte[] bytes = new byte[length];
+        buffer.get(start, bytes);
+        buffer.position(start + width);
+        return new String(bytes, charset);
+    }
+
     private static String removeTrailingNulls(String str) {
         int endIndex = str.length();
         while (endIndex > 0 && str.charAt(endIndex - 1) == '\0') {
@@ -87,8 +169,8 @@ public class Transaction {
     public String toString() {
         ByteBuffer buf = ByteBuffer.allocate(66 + reason.length());
 
-        writeIdentifier(buf, accountIdentifier);
-        writeIdentifier(buf, actor);
+        writeIdentifier(buf, accountIdentifier, StandardCharsets.ISO_8859_1);
+        writeIdentifier(buf, actor, StandardCharsets.ISO_8859_1);
 
         buf.putLong(timestamp);
         buf.putDouble(amount);
@@ -103,14 +185,56 @@ public class Transaction {
         return new String(buf.array(), StandardCharsets.ISO_8859_1);
     }
 
-    private void writeIdentifier(ByteBuffer buf, AccountID accountID) {
+    /**
+     * Encodes the transaction in the binary format.
+     * Unlike {@link #toString()}, reasons and non-player account ids are UTF-8, so any character is kept
+     *
+     * @return The serialized transaction
+     */
+    public byte[] toBytes() {
+        final byte[] reasonBytes = reason.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer buf = ByteBuffer.allocate(BINARY_HEADER_SIZE + reasonBytes.length);
+
+        buf.put(BINARY_VERSION);
+        writeFixedFields(buf);
+        buf.putInt(reasonBytes.length);
+        buf.put(reasonBytes);
+
+        return buf.array();
+    }
+
+    /**
+     * Write the fixed width fields of the binary format, everything but the reason
+     *
+     * @param buf The buffer to write to
+     */
+    void writeFixedFields(ByteBuffer buf) {
+        writeIdentifier(buf, accountIdentifier, StandardCharsets.UTF_8);
+        writeIdentifier(buf, actor, StandardCharsets.UTF_8);
+        buf.putLong(timestamp);
+        buf.putDouble(amount);
+        buf.put(Arrays.copyOf(currencyName.getBytes(StandardCharsets.ISO_8859_1), 8));
+        buf.putLong(revertedWith == null ? 0 : Long.parseLong(revertedWith));
+    }
+
+    /**
+     * Write an account identifier with the fixed width of the binary format
+     *
+     * @param buf       The buffer to write to
+     * @param accountID The account identifier
+     */
+    static void writeIdentifier(ByteBuffer buf, AccountID accountID) {
+        writeIdentifier(buf, accountID, StandardCharsets.UTF_8);
+    }
+
+    private static void writeIdentifier(ByteBuffer buf, AccountID accountID, Charset charset) {
         if (accountID.isPlayer()) {
-            buf.put((byte) '§');
-            buf.putLong(accountID.getUUID().getMostSignificantBits());
-            buf.putLong(accountID.getUUID().getLeastSignificantBits());
+            buf.put(PLAYER_MARKER);
+            buf.putLong(accountID.getMostSignificantBits());
+            buf.putLong(accountID.getLeastSignificantBits());
         } else {
-            buf.put((byte) '^');
-            buf.put(Arrays.copyOf(accountID.toString().getBytes(StandardCharsets.ISO_8859_1),16)); // Ensure non-player account ID is exactly 16 bytes long, padding with zeros if necessary
+            buf.put(NON_PLAYER_MARKER);
+            buf.put(Arrays.copyOf(accountID.toString().getBytes(charset), 16)); // Ensure non-player account ID is exactly 16 bytes long, padding with zeros if necessary
         }
     }
 }
@@ -0,0 +1,173 @@
+package dev.unnm3d.rediseconomy.transaction;
+
+import dev.unnm3d.rediseconomy.RedisEconomyPlugin;
+import dev.unnm3d.rediseconomy.redis.RedisManager;
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+
+/**
+ * Archives the transactions of every account, banks included, and removes the archived transactions.
+ * Account keys are walked with SCAN and several accounts are read concurrently, while a single writer
+ * drains them through a bounded queue: memory is bounded by the queue, not by the size of the ledger.
+ * Only the transactions written to the archive are removed, the ones saved while archiving are kept
+ */
+public class TransactionArchiver {
+    private static final int SCAN_COUNT = 500;
+    /**
+     * Archived transactions are removed after this many accounts are flushed to the file
+     */
+    private static final int FLUSH_ACCOUNTS = 100;
+    private static final AccountChunk END = new AccountChunk(null, null, null);
+    private final RedisEconomyPlugin plugin;
+    private final RedisManager redisManager;
+    private final TransactionStorage storage;
+    private final int parallelism;
+    private final AtomicBoolean aborted;
+
+    public TransactionArchiver(RedisEconomyPlugin plugin, RedisManager redisManager, TransactionStorage storage, int parallelism) {
+        this.plugin = plugin;
+        this.redisManager = redisManager;
+        this.storage = storage;
+        this.parallelism = Math.max(1, parallelism);
+        this.aborted = new AtomicBoolean(false);
+    }
+
+    /**
+     * @param archivePath The archive file to write, see {@link ArchiveWriter#open(Path)}
+     * @param onProgress  Called with the number of archived accounts so far
+     * @return The number of archived accounts
+     */
+    public CompletionStage<Integer> archive(Path archivePath, IntConsumer onProgress) {
+        final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        final BlockingQueue<AccountChunk> queue = new ArrayBlockingQueue<>(parallelism * 2);
+        final CompletableFuture<Void> scan = CompletableFuture.runAsync(() -> scan(queue, executor), executor);
+        return CompletableFuture.supplyAsync(() -> write(archivePath, queue, onProgress), executor)
+                .thenCombine(scan, (archived, scanned) -> archived)
+                .whenComplete((archived, throwable) -> {
+                    aborted.set(true);
+                    executor.shutdown();
+                });
+    }
+
+    private void scan(BlockingQueue<AccountChunk> queue, ExecutorService executor) {
+        final String prefix = storage.getAccountKeyPrefix();
+        final ScanArgs scanArgs = ScanArgs.Builder.matches(prefix + "*").limit(SCAN_COUNT);
+        final Semaphore readers = new Semaphore(parallelism);
+        try {
+            ScanCursor cursor = ScanCursor.INITIAL;
+            do {
+                final ScanCursor currentCursor = cursor;
+                final KeyScanCursor<String> result = redisManager.getConnectionAsync(connection ->
+                        connection.scan(currentCursor, scanArgs)).toCompletableFuture().join();
+                for (String key : result.getKeys()) {
+                    final AccountID accountId = parseAccountId(key.substring(prefix.length()));
+                    readers.acquire();
+                    //Queued from the executor, blocking on a full queue must not block the Redis event loop
+                    storage.getAllTransactions(accountId).whenCompleteAsync((transactions, throwable) -> {
+                        try {
+                            if (throwable != null) {
+                                plugin.getLogger().warning("Failed to read the transactions of " + accountId + ": " + throwable.getMessage());
+                            } else if (!transactions.isEmpty()) {
+                                put(queue, new AccountChunk(accountId, getAccountName(accountId), transactions));
+                            }
+                        } finally {
+                            readers.release();
+                        }
+                    }, executor);
+                    if (aborted.get()) return;
+                }
+                cursor = result;
+            } while (!cursor.isFinished());
+            readers.acquire(parallelism);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            put(queue, END);
+        }
+    }
+
+    private void put(BlockingQueue<AccountChunk> queue, AccountChunk chunk) {
+        try {
+            while (!queue.offer(chunk, 1, TimeUnit.SECONDS)) {
+                if (aborted.get()) return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int write(Path archivePath, BlockingQueue<AccountChunk> queue, IntConsumer onProgress) {
+        final List<ArchivedAccount> pendingRemoval = new ArrayList<>(FLUSH_ACCOUNTS);
+        final List<CompletableFuture<Long>> removals = new ArrayList<>();
+        int archived = 0;
+        try (ArchiveWriter writer = ArchiveWriter.open(archivePath)) {
+            for (AccountChunk chunk = queue.take(); chunk != END; chunk = queue.take()) {
+                writer.writeAccount(chunk.accountId(), chunk.name(), chunk.transactions());
+                //Only the ids are kept until the transactions are removed
+                pendingRemoval.add(new ArchivedAccount(chunk.accountId(), List.copyOf(chunk.transactions().keySet())));
+                archived++;
+                if (archived % FLUSH_ACCOUNTS == 0) {
+                    writer.flush();
+                    if (writer.isReadableAfterFlush()) {
+                        removeArchived(pendingRemoval, removals);
+                    }
+                    onProgress.accept(archived);
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            aborted.set(true);
+            plugin.getLogger().severe("Failed to write transaction archive: " + e.getMessage());
+            //The accounts that are not removed yet may not be readable from the file
+            return archived - pendingRemoval.size();
+        }
+        removeArchived(pendingRemoval, removals);
+        final long removed = CompletableFuture.allOf(removals.toArray(new CompletableFuture[0]))
+                .thenApply(v -> removals.stream().mapToLong(CompletableFuture::join).sum())
+                .join();
+        RedisEconomyPlugin.debug("Archived " + archived + " accounts, removed " + removed + " transactions");
+        return archived;
+    }
+
+    private void removeArchived(List<ArchivedAccount> chunks, List<CompletableFuture<Long>> removals) {
+        for (ArchivedAccount chunk : chunks) {
+            removals.add(storage.removeTransactions(chunk.accountId(), chunk.ids())
+                    .toCompletableFuture()
+                    .exceptionally(throwable -> {
+                        plugin.getLogger().warning("Failed to remove the archived transactions of " + chunk.accountId() + ": " + throwable.getMessage());
+                        return 0L;
+                    }));
+        }
+        chunks.clear();
+    }
+
+    private String getAccountName(AccountID accountId) {
+        if (!accountId.isPlayer()) return accountId.toString();
+        final String name = plugin.getCurrenciesManager().getUsernameFromUUIDCache(accountId.getUUID());
+        return name == null ? "Unknown" : name;
+    }
+
+    private static AccountID parseAccountId(String id) {
+        try {
+            return new AccountID(UUID.fromString(id));
+        } catch (IllegalArgumentException e) {
+            return new AccountID(id);
+        }
+    }
+
+    private record AccountChunk(AccountID accountId, String name, TreeMap<Long, Transaction> transactions) {
+    }
+
+    private record ArchivedAccount(AccountID accountId, List<Long> ids) {
+    }
+}
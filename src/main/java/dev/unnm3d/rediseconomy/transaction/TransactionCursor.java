@@ -0,0 +1,33 @@
+package dev.unnm3d.rediseconomy.transaction;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Keyset cursor of the time index: the timestamp and the id of the last transaction of a page.
+ * The next page starts right after it, so new transactions don't shift the following pages
+ *
+ * @param timestamp The timestamp of the last transaction read
+ * @param id        The id of the last transaction read
+ */
+public record TransactionCursor(long timestamp, long id) {
+
+    /**
+     * @param cursor The cursor as written by toString
+     * @return The cursor, or null if the string is not a cursor
+     */
+    public static @Nullable TransactionCursor parse(@NotNull String cursor) {
+        final int separator = cursor.indexOf(':');
+        if (separator == -1) return null;
+        try {
+            return new TransactionCursor(Long.parseLong(cursor.substring(0, separator)), Long.parseLong(cursor.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return timestamp + ":" + id;
+    }
+}
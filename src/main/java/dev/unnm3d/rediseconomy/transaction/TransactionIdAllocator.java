@@ -0,0 +1,101 @@
+package dev.unnm3d.rediseconomy.transaction;
+
+import dev.unnm3d.rediseconomy.RedisEconomyPlugin;
+import dev.unnm3d.rediseconomy.redis.RedisKeys;
+import dev.unnm3d.rediseconomy.redis.RedisManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out transaction ids from blocks leased with INCRBY on the global counter,
+ * so the counter is written once per block instead of once per transaction.
+ * Ids are unique on the network and increasing on each instance, the unused ids of a block are lost on shutdown
+ */
+public class TransactionIdAllocator {
+    private final RedisManager redisManager;
+    private final int blockSize;
+    private volatile Block block;
+    private CompletableFuture<Block> leasing;
+
+    public TransactionIdAllocator(RedisManager redisManager, int blockSize) {
+        this.redisManager = redisManager;
+        this.blockSize = Math.max(1, blockSize);
+        this.block = new Block(new AtomicLong(1), 0);
+    }
+
+    /**
+     * @param count How many ids are needed
+     * @return The ids, in increasing order
+     */
+    public CompletionStage<List<Long>> allocate(int count) {
+        return allocate(new ArrayList<>(count), count);
+    }
+
+    /**
+     * @return The last id handed out by this instance, 0 if no id was handed out yet
+     */
+    public long getLastAllocatedId() {
+        final Block current = block;
+        return Math.min(current.next().get() - 1, current.last());
+    }
+
+    private CompletionStage<List<Long>> allocate(List<Long> ids, int count) {
+        final Block current = block;
+        while (ids.size() < count) {
+            final long id = current.next();
+            if (id == -1) {
+                return lease(current).thenCompose(leased -> allocate(ids, count));
+            }
+            ids.add(id);
+        }
+        return CompletableFuture.completedFuture(ids);
+    }
+
+    /**
+     * Lease a new block if the exhausted one is still the current block.
+     * Concurrent callers share the same lease
+     */
+    private synchronized CompletionStage<Block> lease(Block exhausted) {
+        if (block != exhausted) {
+            return CompletableFuture.completedFuture(block);
+        }
+        if (leasing == null) {
+            leasing = redisManager.getConnectionAsync(connection ->
+                            connection.incrby(RedisKeys.TRANSACTIONS_COUNTER.toString(), blockSize))
+                    .thenApply(last -> new Block(new AtomicLong(last - blockSize + 1), last))
+                    .toCompletableFuture()
+                    .whenComplete((leased, throwable) -> {
+                        synchronized (this) {
+                            if (leased != null) {
+                                block = leased;
+                                RedisEconomyPlugin.debug("Leased transaction ids " + (leased.last() - blockSize + 1) + "-" + leased.last());
+                            }
+                            leasing = null;
+                        }
+                    });
+            final CompletableFuture<Block> lease = leasing;
+            //The reply may have arrived before the assignment
+            if (lease.isDone()) leasing = null;
+            return lease;
+        }
+        return leasing;
+    }
+
+    /**
+     * @param next The next id to hand out
+     * @param last The last id of the block, inclusive
+     */
+    private record Block(AtomicLong next, long last) {
+        /**
+         * @return The next id, or -1 if the block is exhausted
+         */
+        long next() {
+            final long id = next.getAndIncrement();
+            return id <= last ? id : -1;
+        }
+    }
+}
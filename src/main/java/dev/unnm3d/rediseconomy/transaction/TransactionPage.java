@@ -0,0 +1,23 @@
+package dev.unnm3d.rediseconomy.transaction;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+
+/**
+ * A page of the transactions of an account
+ *
+ * @param transactions The transactions of the page by id, newest first by timestamp
+ * @param nextCursor   The cursor of the next page, or null if this is the last page
+ */
+public record TransactionPage(@NotNull LinkedHashMap<Long, Transaction> transactions, @Nullable TransactionCursor nextCursor) {
+
+    public static TransactionPage empty() {
+        return new TransactionPage(new LinkedHashMap<>(), null);
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,89 @@
+package dev.unnm3d.rediseconomy.transaction;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Where the transactions of the accounts are stored on Redis
+ */
+public interface TransactionStorage {
+
+    /**
+     * Save the transactions atomically, each one in the history of its account identifier
+     *
+     * @param transactions The transactions to save
+     * @param ttlSeconds   The time to live of the transactions, 0 or less to keep them
+     * @return The ids of the transactions, in the same order
+     */
+    CompletionStage<List<Long>> saveTransactions(@NotNull List<Transaction> transactions, long ttlSeconds);
+
+    /**
+     * @param accountId The account id
+     * @param limit     Maximum number of transactions to return
+     * @return The latest transactions of the account by id, newest first by timestamp
+     */
+    CompletionStage<LinkedHashMap<Long, Transaction>> getTransactions(@NotNull AccountID accountId, int limit);
+
+    /**
+     * @param accountId The account id
+     * @param id        The transaction id
+     * @return The transaction, or null if it doesn't exist
+     */
+    CompletionStage<Transaction> getTransaction(@NotNull AccountID accountId, long id);
+
+    /**
+     * Get a page of the transactions of an account in a time range, newest first,
+     * using the time index of the account
+     *
+     * @param accountId The account id
+     * @param from      The minimum timestamp, inclusive
+     * @param to        The maximum timestamp, inclusive
+     * @param cursor    The cursor returned by the previous page, null for the first page
+     * @param pageSize  Maximum number of transactions to return
+     * @return The page of transactions
+     */
+    CompletionStage<TransactionPage> getTransactions(@NotNull AccountID accountId, long from, long to, @Nullable TransactionCursor cursor, int pageSize);
+
+    /**
+     * Replace a saved transaction, used to mark it as reverted
+     *
+     * @param accountId   The account id
+     * @param id          The transaction id
+     * @param transaction The new transaction
+     * @return A CompletionStage that completes when the transaction is replaced
+     */
+    CompletionStage<?> updateTransaction(@NotNull AccountID accountId, long id, @NotNull Transaction transaction);
+
+    /**
+     * @return The prefix of the keys holding the transactions of each account, followed by the account id
+     */
+    String getAccountKeyPrefix();
+
+    /**
+     * Read every transaction of an account incrementally, without a single large reply
+     *
+     * @param accountId The account id
+     * @return Every transaction of the account by id
+     */
+    CompletionStage<TreeMap<Long, Transaction>> getAllTransactions(@NotNull AccountID accountId);
+
+    /**
+     * Remove some transactions of an account, together with their index entries
+     *
+     * @param accountId The account id
+     * @param ids       The ids of the transactions to remove
+     * @return How many transactions were removed
+     */
+    CompletionStage<Long> removeTransactions(@NotNull AccountID accountId, @NotNull Collection<Long> ids);
+
+    /**
+     * @return The patterns matching every key of this storage
+     */
+    List<String> getKeyPatterns();
+}
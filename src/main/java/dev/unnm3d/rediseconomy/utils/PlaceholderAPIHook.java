@@ -4,72 +4,87 @@ import dev.unnm3d.rediseconomy.RedisEconomyPlugin;
 import dev.unnm3d.rediseconomy.config.Langs;
 import dev.unnm3d.rediseconomy.currency.CurrenciesManager;
 import dev.unnm3d.rediseconomy.currency.Currency;
+import dev.unnm3d.rediseconomy.currency.Leaderboard;
+import dev.unnm3d.rediseconomy.redis.RedisKeys;
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
 import me.clip.placeholderapi.expansion.Relational;
 import net.milkbowl.vault.chat.Chat;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.Player;
-import org.bukkit.plugin.RegisteredServiceProvider;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 public class PlaceholderAPIHook extends PlaceholderExpansion implements Relational {
 
     private final CurrenciesManager currenciesManager;
     private final Langs langs;
-    private final HashMap<Currency, Double> totalSupplyCache;
-    private final HashMap<Currency, List<String[]>> baltopCache;
+    private final HashMap<Currency, List<TopEntry>> baltopCache;
+    private final ConcurrentHashMap<String, PlaceholderPlan> plans;
+    private final ConcurrentHashMap<Currency, Map<UUID, Long>> rankCache;
+    /**
+     * Bound of the plans and of the rendered amounts of each plan
+     */
+    private static final int MAX_CACHED = 1024;
     private final int updateCachePeriod;
     private final int baltopPlaceholderAccounts;
-    private final RegisteredServiceProvider<Chat> prefixProvider;
+    private final PlayerMetadataCache metadataCache;
     private final RedisEconomyPlugin plugin;
     private long lastUpdateTimestamp;
 
     public PlaceholderAPIHook(RedisEconomyPlugin redisEconomyPlugin) {
         this.currenciesManager = redisEconomyPlugin.getCurrenciesManager();
         this.langs = redisEconomyPlugin.langs();
-        this.totalSupplyCache = new HashMap<>();
         this.baltopCache = new HashMap<>();
+        this.plans = new ConcurrentHashMap<>();
+        this.rankCache = new ConcurrentHashMap<>();
         this.updateCachePeriod = redisEconomyPlugin.getConfigManager().getSettings().placeholderCacheUpdateInterval;
         this.baltopPlaceholderAccounts = redisEconomyPlugin.getConfigManager().getSettings().baltopPlaceholderAccounts;
         this.lastUpdateTimestamp = 0;
         this.plugin = redisEconomyPlugin;
-        this.prefixProvider = redisEconomyPlugin.getServer().getServicesManager().getRegistration(net.milkbowl.vault.chat.Chat.class);
+        this.metadataCache = new PlayerMetadataCache(redisEconomyPlugin,
+                redisEconomyPlugin.getServer().getServicesManager().getRegistration(Chat.class),
+                redisEconomyPlugin.getConfigManager().getSettings().placeholderMetadataCacheMillis);
         updatePlaceholdersCache();
     }
 
     private void updatePlaceholdersCache() {
         if (System.currentTimeMillis() - lastUpdateTimestamp < updateCachePeriod) return;
+        rankCache.clear();
+        //Rendered amounts are dropped with the other caches, the plans are kept
+        plans.values().forEach(plan -> plan.rendered().clear());
+        final Set<UUID> topPlayers = new HashSet<>();
         for (Currency currency : currenciesManager.getCurrencies()) {
-            //Total Supply
-            double totalSupply = 0;
-            for (Map.Entry<UUID, Double> uuidDoubleEntry : currency.getAccounts().entrySet()) {
-                totalSupply += uuidDoubleEntry.getValue();
+            //Total Supply is kept by the currency, with lazy loading it's read from Redis
+            if (currency.isLazyLoading()) currency.refreshTotalSupply();
+
+            //Balance top, from the local leaderboard mirror
+            final List<Leaderboard.Position> top = currency.getLeaderboard().snapshot().top();
+            List<TopEntry> baltopList = new ArrayList<>();
+            for (int i = 0; i < baltopPlaceholderAccounts; i++) {
+                if (top.size() <= i) break;
+
+                //Prefix, suffix and name come from the metadata cache, players just entered in the top are loaded for the next update
+                final UUID uuid = top.get(i).uuid();
+                final PlayerMetadataCache.PlayerMetadata metadata = metadataCache.get(uuid);
+                final String name = metadata == null || metadata.name() == null ? currenciesManager.getUsernameFromUUIDCache(uuid) : metadata.name();
+                baltopList.add(new TopEntry(
+                        metadata == null ? "" : metadata.prefix(),
+                        metadata == null ? "" : metadata.suffix(),
+                        name == null ? "Unknown" : name,
+                        top.get(i).balance()
+                ));
+                topPlayers.add(uuid);
             }
-            totalSupplyCache.put(currency, totalSupply);
-
-            //Balance top
-            currency.getOrderedAccounts(baltopPlaceholderAccounts).thenAccept(accounts -> {
-                List<String[]> baltopList = new ArrayList<>();
-                for (int i = 0; i < baltopPlaceholderAccounts; i++) {
-                    if (accounts.size() <= i) break;
-
-                    //Extract data from vault and cache
-                    String worldName = plugin.getServer().getWorlds().get(0).getName();
-                    UUID fromString = UUID.fromString(accounts.get(i).getValue());
-                    baltopList.add(new String[]{
-                            prefixProvider.getProvider().getPlayerPrefix(worldName, plugin.getServer().getOfflinePlayer(fromString)),
-                            prefixProvider.getProvider().getPlayerSuffix(worldName, plugin.getServer().getOfflinePlayer(fromString)),
-                            currenciesManager.getUsernameFromUUIDCache(fromString) == null ? "Unknown" : currenciesManager.getUsernameFromUUIDCache(fromString),
-                            String.valueOf(accounts.get(i).getScore())
-                    });
-                }
-                baltopCache.put(currency, baltopList);
-            });
+            baltopCache.put(currency, baltopList);
         }
+        //Currencies replaced by a reload are not kept alive by the cache
+        baltopCache.keySet().retainAll(currenciesManager.getCurrencies());
+        metadataCache.refresh(topPlayers);
         lastUpdateTimestamp = System.currentTimeMillis();
     }
 
@@ -103,98 +118,108 @@ public class PlaceholderAPIHook extends PlaceholderExpansion implements Relation
     // %rediseco_plural_<currency>%
     @Override
     public String onRequest(OfflinePlayer player, String params) {
-        List<String> splitted = List.of(params.split("_"));
-        if (splitted.size() < 2) return null;
-        Currency currency = currenciesManager.getCurrencyByName(splitted.getLast());
-        if (currency == null) return "Invalid currency";
-
-        if (splitted.getFirst().equals("bal")) {
-            double balance = currency.getBalance(player);
-            return parseParams(balance, splitted, currency);
-
+        PlaceholderPlan plan = plans.get(params);
+        if (plan == null) {
+            //Params come from configurations, the bound only protects from unexpected growth
+            if (plans.size() > MAX_CACHED) plans.clear();
+            plan = PlaceholderPlan.compile(params, baltopPlaceholderAccounts);
+            plans.put(params, plan);
         }
+        if (plan.currencyName() == null) return null;
+        //Resolved on every request, currencies are replaced when they are reloaded
+        final Currency currency = currenciesManager.getCurrencyByName(plan.currencyName());
+        if (currency == null) return "Invalid currency";
 
-        if (splitted.getFirst().equals("singular")) {
-            return currency.getCurrencySingular();
-        }
-        if (splitted.getFirst().equals("plural")) {
-            return currency.getCurrencyPlural();
+        switch (plan.kind()) {
+            case NONE -> {
+                return null;
+            }
+            case INVALID_POSITION -> {
+                return "N/A";
+            }
+            case BAL -> {
+                return formatCached(currency.getBalance(player), currency, plan, player.getUniqueId());
+            }
+            case SINGULAR -> {
+                return currency.getCurrencySingular();
+            }
+            case PLURAL -> {
+                return currency.getCurrencyPlural();
+            }
         }
 
         updatePlaceholdersCache();
 
-        switch (splitted.getFirst()) {
-            case "totsupply" -> {
-                return parseParams(totalSupplyCache.get(currency), splitted, currency);
+        switch (plan.kind()) {
+            case TOTSUPPLY -> {
+                return formatCached(currency.getTotalSupply(), currency, plan, RedisKeys.getServerUUID());
             }
-            case "maxbal" -> {
+            case MAXBAL -> {
                 return String.valueOf(currency.getPlayerMaxBalance(player.getUniqueId()));
             }
-            case "top" -> {
-
-                if (splitted.size() < 3) return null; //Insufficient parameters
-
-                List<String[]> user_balance_strings = baltopCache.get(currency);
-                if (user_balance_strings == null) return null;
-
-                if (splitted.get(1).equals("position")) {//rediseco_top_position_<currency>
-                    for (int i = 0; i < user_balance_strings.size(); i++) {
-                        if (user_balance_strings.get(i)[2].equals(player.getName())) {
-                            return String.valueOf(i + 1);
-                        }
-                    }
-                    return baltopPlaceholderAccounts + "+";
-                }
-
-                int position = Integer.parseInt(splitted.get(1));
-                if (position < 1 || position > baltopPlaceholderAccounts) return "N/A"; //Invalid positions
-                if (user_balance_strings.size() < position) return "N/A";
-
-                switch (splitted.get(2)) {
-                    case "playerprefix" -> {
-                        return user_balance_strings.get(position - 1)[0];
-                    }
-                    case "playersuffix" -> {
-                        return user_balance_strings.get(position - 1)[1];
-                    }
-                    case "name" -> {
-                        return user_balance_strings.get(position - 1)[2];
-                    }
-                    case "bal" -> {
-                        double balance = Double.parseDouble(user_balance_strings.get(position - 1)[3]);
-                        return parseParams(balance, splitted, currency);
-                    }
+            case TOP_POSITION -> {//rediseco_top_position_<currency>
+                if (baltopCache.get(currency) == null) return null;
+                final int rank = currency.getLeaderboard().snapshot().rank(player.getUniqueId());
+                if (rank != -1) return String.valueOf(rank);
+                //Ranks outside the local leaderboard are read with ZREVRANK once per cache period
+                final Map<UUID, Long> currencyRanks = rankCache.computeIfAbsent(currency, c -> new ConcurrentHashMap<>());
+                final Long cachedRank = currencyRanks.putIfAbsent(player.getUniqueId(), -1L);
+                if (cachedRank == null) {
+                    currency.getRank(player.getUniqueId()).thenAccept(playerRank ->
+                            currencyRanks.put(player.getUniqueId(), playerRank == null ? -1L : playerRank));
                 }
+                return cachedRank == null || cachedRank == -1 ? baltopPlaceholderAccounts + "+" : String.valueOf(cachedRank);
             }
         }
-        return null;
-    }
 
-    private String parseParams(double amount, List<String> splitted, Currency currency) {
+        final List<TopEntry> topEntries = baltopCache.get(currency);
+        if (topEntries == null) return null;
+        if (topEntries.size() < plan.position()) return "N/A";
+        final TopEntry entry = topEntries.get(plan.position() - 1);
 
-        String formattedNumber = currency.getDecimalFormat().format(amount);
+        return switch (plan.kind()) {
+            case TOP_PREFIX -> entry.prefix();
+            case TOP_SUFFIX -> entry.suffix();
+            case TOP_NAME -> entry.name();
+            case TOP_BAL -> formatCached(entry.balance(), currency, plan, RedisKeys.getServerUUID());
+            default -> null;
+        };
+    }
 
-        if (splitted.contains("short")) {
-            if (amount >= 1000000000000.0) {
-                formattedNumber = currency.getDecimalFormat().format(amount / 1000000000000.0) + langs.unitSymbols.trillion();
-            } else if (amount >= 1000000000.0) {
-                formattedNumber = currency.getDecimalFormat().format(amount / 1000000000.0) + langs.unitSymbols.billion();
-            } else if (amount >= 1000000.0) {
-                formattedNumber = currency.getDecimalFormat().format(amount / 1000000.0) + langs.unitSymbols.million();
-            } else if (amount >= 1000.0) {
-                formattedNumber = currency.getDecimalFormat().format(amount / 1000.0) + langs.unitSymbols.thousand();
-            }
+    /**
+     * Format the amount, reusing the last output of the plan for the same account if neither the amount
+     * nor the currency changed
+     *
+     * @param amount   The amount to format
+     * @param currency The currency of the amount
+     * @param plan     The placeholder plan
+     * @param account  The account the amount belongs to
+     * @return The formatted amount
+     */
+    private String formatCached(double amount, Currency currency, PlaceholderPlan plan, UUID account) {
+        final RenderedAmount rendered = plan.rendered().get(account);
+        if (rendered != null && rendered.currency() == currency && Double.compare(rendered.amount(), amount) == 0) {
+            return rendered.text();
         }
+        final String text = format(amount, currency, plan);
+        //Players that left are not tracked, the memo is dropped when it grows too much
+        if (plan.rendered().size() > MAX_CACHED) plan.rendered().clear();
+        plan.rendered().put(account, new RenderedAmount(currency, amount, text));
+        return text;
+    }
+
+    private String format(double amount, Currency currency, PlaceholderPlan plan) {
+        String formattedNumber;
 
-        formattedNumber = splitted.stream()
-                .filter(s -> s.startsWith("decformat"))
-                .findFirst()
-                .map(s -> s.split("decformat"))
-                .filter(splittedFormat -> splittedFormat.length > 1)
-                .map(splittedFormat -> new DecimalFormat(splittedFormat[1]).format(amount))
-                .orElse(formattedNumber);
+        if (plan.customFormat() != null) {
+            formattedNumber = plan.customFormat().get().format(amount);
+        } else if (plan.shortAmount()) {
+            formattedNumber = DecimalUtils.shortAmount(amount, currency.getDecimalFormat());
+        } else {
+            formattedNumber = currency.getDecimalFormat().format(amount);
+        }
 
-        if (splitted.contains("formatted")) {
+        if (plan.formatted()) {
             if (amount == 1)
                 formattedNumber += currency.getCurrencySingular();
             else
@@ -203,6 +228,90 @@ public class PlaceholderAPIHook extends PlaceholderExpansion implements Relation
         return formattedNumber;
     }
 
+    /**
+     * A params string parsed once: the currency, what to show and how to format it
+     *
+     * @param kind         What the placeholder shows
+     * @param currencyName The name of the currency, null if the kind doesn't need it
+     * @param position     1-based top position for the top kinds
+     * @param shortAmount  If the amount is shortened with the unit symbols
+     * @param formatted    If the currency name is appended
+     * @param customFormat The decformat formatter, DecimalFormat is not thread safe so each thread has its own
+     * @param rendered     The last output of each account, the balance and the currency tell if it's still valid
+     */
+    private record PlaceholderPlan(@NotNull Kind kind, String currencyName, int position, boolean shortAmount,
+                                   boolean formatted, @Nullable ThreadLocal<DecimalFormat> customFormat,
+                                   @NotNull ConcurrentHashMap<UUID, RenderedAmount> rendered) {
+
+        private static PlaceholderPlan of(Kind kind, String currencyName) {
+            return new PlaceholderPlan(kind, currencyName, 0, false, false, null, new ConcurrentHashMap<>());
+        }
+
+        private static PlaceholderPlan compile(String params, int baltopPlaceholderAccounts) {
+            final String[] splitted = params.split("_");
+            if (splitted.length < 2) return of(Kind.NONE, null);
+            final String currencyName = splitted[splitted.length - 1];
+
+            final List<String> flags = List.of(splitted);
+            final ThreadLocal<DecimalFormat> customFormat = flags.stream()
+                    .filter(s -> s.startsWith("decformat"))
+                    .findFirst()
+                    .map(s -> s.split("decformat"))
+                    .filter(splittedFormat -> splittedFormat.length > 1)
+                    .map(splittedFormat -> {
+                        //Invalid patterns fail here, once
+                        final DecimalFormat decimalFormat = new DecimalFormat(splittedFormat[1]);
+                        return ThreadLocal.withInitial(() -> (DecimalFormat) decimalFormat.clone());
+                    })
+                    .orElse(null);
+            final boolean shortAmount = flags.contains("short");
+            final boolean formatted = flags.contains("formatted");
+
+            Kind kind = switch (splitted[0]) {
+                case "bal" -> Kind.BAL;
+                case "singular" -> Kind.SINGULAR;
+                case "plural" -> Kind.PLURAL;
+                case "totsupply" -> Kind.TOTSUPPLY;
+                case "maxbal" -> Kind.MAXBAL;
+                case "top" -> Kind.TOP_NAME;
+                default -> Kind.NONE;
+            };
+            int position = 0;
+            if (kind == Kind.TOP_NAME) {
+                if (splitted.length < 3) return of(Kind.NONE, currencyName); //Insufficient parameters
+                if (splitted[1].equals("position")) {
+                    kind = Kind.TOP_POSITION;
+                } else {
+                    try {
+                        position = Integer.parseInt(splitted[1]);
+                    } catch (NumberFormatException e) {
+                        return of(Kind.NONE, currencyName);
+                    }
+                    if (position < 1 || position > baltopPlaceholderAccounts) return of(Kind.INVALID_POSITION, currencyName);
+                    kind = switch (splitted[2]) {
+                        case "playerprefix" -> Kind.TOP_PREFIX;
+                        case "playersuffix" -> Kind.TOP_SUFFIX;
+                        case "name" -> Kind.TOP_NAME;
+                        case "bal" -> Kind.TOP_BAL;
+                        default -> Kind.NONE;
+                    };
+                }
+            }
+            return new PlaceholderPlan(kind, currencyName, position, shortAmount, formatted, customFormat, new ConcurrentHashMap<>());
+        }
+
+        private enum Kind {
+            NONE, INVALID_POSITION, BAL, SINGULAR, PLURAL, TOTSUPPLY, MAXBAL,
+            TOP_POSITION, TOP_PREFIX, TOP_SUFFIX, TOP_NAME, TOP_BAL
+        }
+    }
+
+    private record RenderedAmount(@NotNull Currency currency, double amount, @NotNull String text) {
+    }
+
+    private record TopEntry(@NotNull String prefix, @NotNull String suffix, @NotNull String name, double balance) {
+    }
+
     // %rel_rediseco_is_pay_blocking%
     // %rel_rediseco_is_pay_blocked%
     @Override
@@ -0,0 +1,92 @@
+package dev.unnm3d.rediseconomy.utils;
+
+import dev.unnm3d.rediseconomy.RedisEconomyPlugin;
+import dev.unnm3d.rediseconomy.currency.CurrenciesManager;
+import net.milkbowl.vault.chat.Chat;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.plugin.RegisteredServiceProvider;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Expiring cache of the prefix, suffix and name of the players shown in the top placeholders.
+ * Expired or missing entries are loaded in bulk off the calling thread, readers never wait for them
+ */
+public class PlayerMetadataCache {
+    private final RedisEconomyPlugin plugin;
+    private final CurrenciesManager currenciesManager;
+    private final @Nullable RegisteredServiceProvider<Chat> prefixProvider;
+    private final long expireMillis;
+    private final ConcurrentHashMap<UUID, PlayerMetadata> metadata;
+    private final AtomicBoolean refreshing;
+
+    public PlayerMetadataCache(RedisEconomyPlugin plugin, @Nullable RegisteredServiceProvider<Chat> prefixProvider, long expireMillis) {
+        this.plugin = plugin;
+        this.currenciesManager = plugin.getCurrenciesManager();
+        this.prefixProvider = prefixProvider;
+        this.expireMillis = expireMillis;
+        this.metadata = new ConcurrentHashMap<>();
+        this.refreshing = new AtomicBoolean(false);
+    }
+
+    /**
+     * @param uuid The UUID of the player
+     * @return The cached metadata, even if expired, or null if never loaded
+     */
+    public @Nullable PlayerMetadata get(@NotNull UUID uuid) {
+        return metadata.get(uuid);
+    }
+
+    /**
+     * Load the missing and expired entries of the players, and forget the players not requested anymore.
+     * Only one refresh runs at a time
+     *
+     * @param uuids The players that should be cached
+     */
+    public void refresh(@NotNull Collection<UUID> uuids) {
+        final long now = System.currentTimeMillis();
+        final Set<UUID> requested = new HashSet<>(uuids);
+        metadata.keySet().retainAll(requested);
+        final List<UUID> toLoad = requested.stream()
+                .filter(uuid -> {
+                    final PlayerMetadata cached = metadata.get(uuid);
+                    //Names missing from the name cache are retried on every refresh
+                    return cached == null || cached.name() == null || now - cached.loadedAt() > expireMillis;
+                }).toList();
+        if (toLoad.isEmpty() || !refreshing.compareAndSet(false, true)) return;
+
+        CompletableFuture.runAsync(() -> {
+            final String worldName = plugin.getServer().getWorlds().getFirst().getName();
+            for (UUID uuid : toLoad) {
+                final String name = currenciesManager.getUsernameFromUUIDCache(uuid);
+                String prefix = "";
+                String suffix = "";
+                if (prefixProvider != null) {
+                    final OfflinePlayer offlinePlayer = plugin.getServer().getOfflinePlayer(uuid);
+                    prefix = Objects.requireNonNullElse(prefixProvider.getProvider().getPlayerPrefix(worldName, offlinePlayer), "");
+                    suffix = Objects.requireNonNullElse(prefixProvider.getProvider().getPlayerSuffix(worldName, offlinePlayer), "");
+                }
+                metadata.put(uuid, new PlayerMetadata(prefix, suffix, name, System.currentTimeMillis()));
+            }
+            RedisEconomyPlugin.debug("Refreshed placeholder metadata of " + toLoad.size() + " players");
+        }).whenComplete((result, throwable) -> {
+            refreshing.set(false);
+            if (throwable != null)
+                plugin.getLogger().warning("Failed to refresh placeholder metadata: " + throwable.getMessage());
+        });
+    }
+
+    /**
+     * @param prefix   The chat prefix
+     * @param suffix   The chat suffix
+     * @param name     The player name, null if it wasn't in the name cache yet
+     * @param loadedAt The load timestamp in milliseconds
+     */
+    public record PlayerMetadata(@NotNull String prefix, @NotNull String suffix, @Nullable String name, long loadedAt) {
+    }
+}
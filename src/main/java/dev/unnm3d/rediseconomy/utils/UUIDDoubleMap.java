@@ -0,0 +1,358 @@
+package dev.unnm3d.rediseconomy.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Concurrent open-addressing map from UUID to primitive double.
+ * <p>
+ * Keys are stored as their two longs and values inline, so no UUID, node or Double is allocated per entry.
+ * The table is split in segments guarded by a {@link StampedLock}: reads are optimistic and lock-free
+ * unless they race with a write on the same segment.
+ */
+public final class UUIDDoubleMap {
+    private static final int SEGMENTS = 16;
+    private static final int SEGMENT_SHIFT = Integer.SIZE - Integer.numberOfTrailingZeros(SEGMENTS);
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final Map<UUID, Double> view = new View();
+
+    public UUIDDoubleMap() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    static int hash(long most, long least) {
+        long h = most ^ least;
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return (int) (h ^ (h >>> 33));
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[hash >>> SEGMENT_SHIFT];
+    }
+
+    public boolean containsKey(@NotNull UUID uuid) {
+        final long most = uuid.getMostSignificantBits();
+        final long least = uuid.getLeastSignificantBits();
+        final int hash = hash(most, least);
+        return segmentFor(hash).contains(most, least, hash);
+    }
+
+    /**
+     * @param uuid         The key
+     * @param defaultValue The value returned when the key is absent
+     * @return The value mapped to the key or defaultValue
+     */
+    public double get(@NotNull UUID uuid, double defaultValue) {
+        final long most = uuid.getMostSignificantBits();
+        final long least = uuid.getLeastSignificantBits();
+        final int hash = hash(most, least);
+        return segmentFor(hash).get(most, least, hash, defaultValue);
+    }
+
+    /**
+     * @param uuid  The key
+     * @param value The value to map
+     * @return The previous value, or NaN if the key was absent. Use {@link #containsKey} if NaN values are stored
+     */
+    public double put(@NotNull UUID uuid, double value) {
+        final long most = uuid.getMostSignificantBits();
+        final long least = uuid.getLeastSignificantBits();
+        final int hash = hash(most, least);
+        return segmentFor(hash).put(most, least, hash, value);
+    }
+
+    /**
+     * @param uuid  The key
+     * @param value The value to map if the key is absent
+     * @return true if the value was mapped
+     */
+    public boolean putIfAbsent(@NotNull UUID uuid, double value) {
+        final long most = uuid.getMostSignificantBits();
+        final long least = uuid.getLeastSignificantBits();
+        final int hash = hash(most, least);
+        return segmentFor(hash).putIfAbsent(most, least, hash, value);
+    }
+
+    public void putAll(@NotNull Map<UUID, Double> map) {
+        map.forEach(this::put);
+    }
+
+    /**
+     * @param uuid The key
+     * @return true if the key was present
+     */
+    public boolean remove(@NotNull UUID uuid) {
+        final long most = uuid.getMostSignificantBits();
+        final long least = uuid.getLeastSignificantBits();
+        final int hash = hash(most, least);
+        return segmentFor(hash).remove(most, least, hash);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Iterates a snapshot of each segment, so the consumer never runs under a lock.
+     * Like ConcurrentHashMap iteration, writes made meanwhile may or may not be seen
+     *
+     * @param consumer The consumer of every key and value
+     */
+    public void forEach(@NotNull BiConsumer<UUID, Double> consumer) {
+        for (Segment segment : segments) {
+            final Table table = segment.snapshot();
+            for (int i = 0; i <= table.mask; i++) {
+                if (table.used[i]) {
+                    consumer.accept(new UUID(table.keys[i << 1], table.keys[(i << 1) + 1]), table.values[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return An unmodifiable Map view backed by this map
+     */
+    public @NotNull Map<UUID, Double> asMap() {
+        return view;
+    }
+
+    private static final class Table {
+        private final long[] keys;
+        private final double[] values;
+        private final boolean[] used;
+        private final int mask;
+
+        private Table(int capacity) {
+            this.keys = new long[capacity << 1];
+            this.values = new double[capacity];
+            this.used = new boolean[capacity];
+            this.mask = capacity - 1;
+        }
+
+        private Table(Table other) {
+            this.keys = other.keys.clone();
+            this.values = other.values.clone();
+            this.used = other.used.clone();
+            this.mask = other.mask;
+        }
+
+        /**
+         * @return The slot holding the key, or the complement of the free slot where it would be inserted
+         */
+        private int find(long most, long least, int hash) {
+            int slot = hash & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                if (!used[slot]) return ~slot;
+                if (keys[slot << 1] == most && keys[(slot << 1) + 1] == least) return slot;
+                slot = (slot + 1) & mask;
+            }
+            //Only reachable by an optimistic read racing a writer, the stamp validation discards it
+            return ~0;
+        }
+    }
+
+    private static final class Segment {
+        private final StampedLock lock = new StampedLock();
+        private volatile Table table = new Table(16);
+        private volatile int size;
+
+        private boolean contains(long most, long least, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                final boolean found = table.find(most, least, hash) >= 0;
+                if (lock.validate(stamp)) return found;
+            }
+            stamp = lock.readLock();
+            try {
+                return table.find(most, least, hash) >= 0;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private double get(long most, long least, int hash, double defaultValue) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                final Table t = table;
+                final int slot = t.find(most, least, hash);
+                final double value = slot >= 0 ? t.values[slot] : defaultValue;
+                if (lock.validate(stamp)) return value;
+            }
+            stamp = lock.readLock();
+            try {
+                final Table t = table;
+                final int slot = t.find(most, least, hash);
+                return slot >= 0 ? t.values[slot] : defaultValue;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private double put(long most, long least, int hash, double value) {
+            final long stamp = lock.writeLock();
+            try {
+                final Table t = table;
+                final int slot = t.find(most, least, hash);
+                if (slot >= 0) {
+                    final double previous = t.values[slot];
+                    t.values[slot] = value;
+                    return previous;
+                }
+                insert(t, slot, most, least, hash, value);
+                return Double.NaN;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Unlike put, tells the absent key apart from a stored NaN
+         */
+        private boolean putIfAbsent(long most, long least, int hash, double value) {
+            final long stamp = lock.writeLock();
+            try {
+                final Table t = table;
+                final int slot = t.find(most, least, hash);
+                if (slot >= 0) return false;
+                insert(t, slot, most, least, hash, value);
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Must be called under the write lock
+         *
+         * @param freeSlot The complement of the free slot returned by find
+         */
+        private void insert(Table t, int freeSlot, long most, long least, int hash, double value) {
+            int slot = freeSlot;
+            if (size + 1 > (t.mask + 1) * LOAD_FACTOR) {
+                t = resize(t);
+                slot = t.find(most, least, hash);
+            }
+            slot = ~slot;
+            t.keys[slot << 1] = most;
+            t.keys[(slot << 1) + 1] = least;
+            t.values[slot] = value;
+            t.used[slot] = true;
+            size++;
+        }
+
+        private boolean remove(long most, long least, int hash) {
+            final long stamp = lock.writeLock();
+            try {
+                final Table t = table;
+                int slot = t.find(most, least, hash);
+                if (slot < 0) return false;
+                //Backward shift deletion keeps probe chains intact without tombstones
+                int next = (slot + 1) & t.mask;
+                while (t.used[next]) {
+                    final int home = hash(t.keys[next << 1], t.keys[(next << 1) + 1]) & t.mask;
+                    if (((next - home) & t.mask) >= ((next - slot) & t.mask)) {
+                        t.keys[slot << 1] = t.keys[next << 1];
+                        t.keys[(slot << 1) + 1] = t.keys[(next << 1) + 1];
+                        t.values[slot] = t.values[next];
+                        slot = next;
+                    }
+                    next = (next + 1) & t.mask;
+                }
+                t.used[slot] = false;
+                size--;
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private Table resize(Table old) {
+            final Table resized = new Table((old.mask + 1) << 1);
+            for (int i = 0; i <= old.mask; i++) {
+                if (!old.used[i]) continue;
+                final long most = old.keys[i << 1];
+                final long least = old.keys[(i << 1) + 1];
+                final int slot = ~resized.find(most, least, hash(most, least));
+                resized.keys[slot << 1] = most;
+                resized.keys[(slot << 1) + 1] = least;
+                resized.values[slot] = old.values[i];
+                resized.used[slot] = true;
+            }
+            table = resized;
+            return resized;
+        }
+
+        private Table snapshot() {
+            final long stamp = lock.readLock();
+            try {
+                return new Table(table);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    private final class View extends AbstractMap<UUID, Double> {
+
+        @Override
+        public Double get(Object key) {
+            if (!(key instanceof UUID uuid)) return null;
+            final double value = UUIDDoubleMap.this.get(uuid, Double.NaN);
+            return Double.isNaN(value) && !UUIDDoubleMap.this.containsKey(uuid) ? null : value;
+        }
+
+        @Override
+        public Double getOrDefault(Object key, Double defaultValue) {
+            final Double value = get(key);
+            return value == null ? defaultValue : value;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof UUID uuid && UUIDDoubleMap.this.containsKey(uuid);
+        }
+
+        @Override
+        public int size() {
+            return UUIDDoubleMap.this.size();
+        }
+
+        @Override
+        public void forEach(BiConsumer<? super UUID, ? super Double> action) {
+            UUIDDoubleMap.this.forEach(action::accept);
+        }
+
+        @Override
+        public @NotNull Set<Entry<UUID, Double>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public @NotNull Iterator<Entry<UUID, Double>> iterator() {
+                    final List<Entry<UUID, Double>> entries = new ArrayList<>(UUIDDoubleMap.this.size());
+                    UUIDDoubleMap.this.forEach((uuid, value) -> entries.add(Map.entry(uuid, value)));
+                    return Collections.unmodifiableList(entries).iterator();
+                }
+
+                @Override
+                public int size() {
+                    return UUIDDoubleMap.this.size();
+                }
+            };
+        }
+    }
+}
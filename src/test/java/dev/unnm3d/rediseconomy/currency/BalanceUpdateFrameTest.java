@@ -0,0 +1,154 @@
+package dev.unnm3d.rediseconomy.currency;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BalanceUpdateFrameTest {
+    private static final UUID INSTANCE = UUID.fromString("0f1e2d3c-4b5a-6978-8796-a5b4c3d2e1f0");
+    private static final UUID PLAYER = UUID.fromString("01234567-89ab-cdef-fedc-ba9876543210");
+
+    /**
+     * Big-endian bytes of a long, written out by hand
+     */
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    /**
+     * Same bytes as struct.pack('>d', value) in the Lua scripts
+     */
+    private static byte[] structPackDouble(double value) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeLong(out, Double.doubleToLongBits(value));
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) out.writeBytes(part);
+        return out.toByteArray();
+    }
+
+    @Test
+    void frameLayout() {
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(1);
+        writeLong(expected, INSTANCE.getMostSignificantBits());
+        writeLong(expected, INSTANCE.getLeastSignificantBits());
+        writeLong(expected, PLAYER.getMostSignificantBits());
+        writeLong(expected, PLAYER.getLeastSignificantBits());
+        expected.writeBytes(structPackDouble(1234.5));
+        expected.writeBytes("Jürgen".getBytes(StandardCharsets.UTF_8));
+
+        assertArrayEquals(expected.toByteArray(), BalanceUpdateFrame.encode(INSTANCE, PLAYER, 1234.5, "Jürgen"));
+        assertArrayEquals(BalanceUpdateFrame.encode(INSTANCE, PLAYER, 1234.5, null),
+                BalanceUpdateFrame.encode(INSTANCE, PLAYER, 1234.5, ""));
+        assertEquals(BalanceUpdateFrame.MIN_SIZE, BalanceUpdateFrame.encode(INSTANCE, PLAYER, 0, null).length);
+    }
+
+    @Test
+    void scriptFrameMatchesEncode() {
+        //DELTA_SCRIPT publishes ARGV[5]..struct.pack('>d',n)..ARGV[6] with the header and the name as arguments
+        for (double balance : new double[]{0, -0.0, 0.1, -250.75, 1e300, Double.MIN_VALUE}) {
+            final byte[] published = concat(BalanceUpdateFrame.encodeHeader(INSTANCE, PLAYER), structPackDouble(balance),
+                    "Steve".getBytes(StandardCharsets.UTF_8));
+            assertArrayEquals(BalanceUpdateFrame.encode(INSTANCE, PLAYER, balance, "Steve"), published);
+            assertArrayEquals(BalanceUpdateFrame.encode(INSTANCE, PLAYER, balance, null),
+                    concat(BalanceUpdateFrame.encodeHeader(INSTANCE, PLAYER), structPackDouble(balance)));
+        }
+        assertEquals(BalanceUpdateFrame.HEADER_SIZE, BalanceUpdateFrame.encodeHeader(INSTANCE, PLAYER).length);
+    }
+
+    @Test
+    void frameRoundTrip() {
+        final BalanceUpdateFrame named = BalanceUpdateFrame.decode(BalanceUpdateFrame.encode(INSTANCE, PLAYER, -3.25, "Jürgen"));
+        assertEquals(PLAYER, named.uuid());
+        assertEquals(-3.25, named.balance());
+        assertEquals("Jürgen", named.playerName());
+        assertTrue(named.isFrom(INSTANCE));
+        assertFalse(named.isFrom(PLAYER));
+
+        final BalanceUpdateFrame unnamed = BalanceUpdateFrame.decode(BalanceUpdateFrame.encode(INSTANCE, PLAYER, 10, null));
+        assertEquals(10, unnamed.balance());
+        assertNull(unnamed.playerName());
+    }
+
+    @Test
+    void binaryDetection() {
+        assertTrue(BalanceUpdateFrame.isBinary(BalanceUpdateFrame.encode(INSTANCE, PLAYER, 1, null)));
+        //Text messages start with the instance UUID
+        final String text = INSTANCE + ";Steve;" + PLAYER + ";1.0";
+        assertFalse(BalanceUpdateFrame.isBinary(text.getBytes(StandardCharsets.UTF_8)));
+        assertFalse(BalanceUpdateFrame.isBinary(BalanceUpdateFrame.encodeHeader(INSTANCE, PLAYER)));
+    }
+
+    @Test
+    void batchLayout() {
+        final UUID other = UUID.fromString("ffffffff-0000-1111-2222-333333333333");
+        final List<BalanceUpdateFrame> updates = List.of(
+                new BalanceUpdateFrame(0, 0, PLAYER, 99.5, "Jürgen"),
+                new BalanceUpdateFrame(0, 0, other, -1, null));
+
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(2);
+        writeLong(expected, INSTANCE.getMostSignificantBits());
+        writeLong(expected, INSTANCE.getLeastSignificantBits());
+        expected.writeBytes(new byte[]{0, 0, 0, 2});
+        writeLong(expected, PLAYER.getMostSignificantBits());
+        writeLong(expected, PLAYER.getLeastSignificantBits());
+        expected.writeBytes(structPackDouble(99.5));
+        expected.write("Jürgen".getBytes(StandardCharsets.UTF_8).length);
+        expected.writeBytes("Jürgen".getBytes(StandardCharsets.UTF_8));
+        writeLong(expected, other.getMostSignificantBits());
+        writeLong(expected, other.getLeastSignificantBits());
+        expected.writeBytes(structPackDouble(-1));
+        expected.write(0);
+
+        assertArrayEquals(expected.toByteArray(), BalanceUpdateFrame.encodeBatch(INSTANCE, updates));
+    }
+
+    @Test
+    void batchRoundTrip() {
+        final String longName = "ü".repeat(128);
+        final List<BalanceUpdateFrame> updates = List.of(
+                new BalanceUpdateFrame(0, 0, PLAYER, 99.5, "Jürgen"),
+                new BalanceUpdateFrame(0, 0, UUID.randomUUID(), 0, null),
+                new BalanceUpdateFrame(0, 0, UUID.randomUUID(), 1e9, "x".repeat(255)),
+                new BalanceUpdateFrame(0, 0, UUID.randomUUID(), -7, longName));
+        final byte[] batch = BalanceUpdateFrame.encodeBatch(INSTANCE, updates);
+        assertTrue(BalanceUpdateFrame.isBatch(batch));
+        assertFalse(BalanceUpdateFrame.isBinary(batch));
+        assertTrue(BalanceUpdateFrame.isBatchFrom(batch, INSTANCE));
+        assertFalse(BalanceUpdateFrame.isBatchFrom(batch, PLAYER));
+
+        final List<BalanceUpdateFrame> decoded = BalanceUpdateFrame.decodeBatch(batch);
+        assertEquals(updates.size(), decoded.size());
+        for (int i = 0; i < updates.size(); i++) {
+            assertEquals(updates.get(i).uuid(), decoded.get(i).uuid());
+            assertEquals(updates.get(i).balance(), decoded.get(i).balance());
+            assertTrue(decoded.get(i).isFrom(INSTANCE));
+        }
+        assertEquals("Jürgen", decoded.get(0).playerName());
+        assertNull(decoded.get(1).playerName());
+        assertEquals("x".repeat(255), decoded.get(2).playerName());
+        //Names longer than 255 bytes are not sent
+        assertNull(decoded.get(3).playerName());
+    }
+
+    @Test
+    void emptyBatch() {
+        final byte[] batch = BalanceUpdateFrame.encodeBatch(INSTANCE, List.of());
+        assertEquals(21, batch.length);
+        assertTrue(BalanceUpdateFrame.isBatch(batch));
+        assertTrue(BalanceUpdateFrame.decodeBatch(batch).isEmpty());
+        assertFalse(BalanceUpdateFrame.isBatch(BalanceUpdateFrame.encode(INSTANCE, PLAYER, 1, null)));
+    }
+}
@@ -0,0 +1,66 @@
+package dev.unnm3d.rediseconomy.transaction;
+
+import dev.unnm3d.rediseconomy.redis.RedisKeys;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountIDTest {
+
+    @Test
+    void playerStringForm() {
+        final UUID uuid = UUID.randomUUID();
+        final AccountID fromUUID = new AccountID(uuid);
+        final AccountID fromBits = new AccountID(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        assertTrue(fromUUID.isPlayer());
+        assertTrue(fromBits.isPlayer());
+        assertEquals(uuid.toString(), fromUUID.toString());
+        assertEquals(uuid.toString(), fromBits.toString());
+        assertEquals(uuid, fromBits.getUUID());
+        assertSame(fromBits.toString(), fromBits.toString());
+    }
+
+    @Test
+    void bankStringForm() {
+        final AccountID bank = new AccountID("bank-€");
+        assertFalse(bank.isPlayer());
+        assertFalse(bank.isServer());
+        assertEquals("bank-€", bank.toString());
+    }
+
+    @Test
+    void serverAccount() {
+        final AccountID server = new AccountID();
+        assertTrue(server.isPlayer());
+        assertTrue(server.isServer());
+        assertEquals(RedisKeys.getServerUUID().toString(), server.toString());
+    }
+
+    @Test
+    void equalsAndHashCodeMatchTheStringForm() {
+        final UUID uuid = UUID.randomUUID();
+        final AccountID fromUUID = new AccountID(uuid);
+        final AccountID fromBits = new AccountID(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        assertEquals(fromUUID, fromBits);
+        assertEquals(fromBits, fromUUID);
+        assertEquals(uuid.toString().hashCode(), fromUUID.hashCode());
+        assertEquals(uuid.toString().hashCode(), fromBits.hashCode());
+        assertNotEquals(fromUUID, new AccountID(UUID.randomUUID()));
+
+        assertEquals(new AccountID("bank"), new AccountID("bank"));
+        assertEquals("bank".hashCode(), new AccountID("bank").hashCode());
+        assertNotEquals(new AccountID("bank"), new AccountID("other"));
+        assertNotEquals(new AccountID(uuid.toString()), fromUUID);
+        assertNotEquals(fromUUID, uuid.toString());
+
+        final Map<AccountID, Integer> map = new HashMap<>();
+        map.put(fromUUID, 1);
+        map.put(new AccountID("bank"), 2);
+        assertEquals(1, map.get(fromBits));
+        assertEquals(2, map.get(new AccountID("bank")));
+    }
+}
@@ -0,0 +1,137 @@
+package dev.unnm3d.rediseconomy.transaction;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexedArchiveTest {
+    private static final String[] REASONS = {"", "Payment", "Pagato 5€ a Jürgen ✓", "Shop purchase of 64 diamonds from the spawn market"};
+
+    @TempDir
+    Path tempDir;
+
+    private static Transaction transaction(AccountID accountId, long timestamp, String reason, String revertedWith) {
+        return new Transaction(accountId, new AccountID(), "vault", timestamp, timestamp / 100.0, revertedWith, reason);
+    }
+
+    /**
+     * @return Transactions with ids far apart, so the records of an account don't have consecutive ids
+     */
+    private static TreeMap<Long, Transaction> transactions(AccountID accountId, Random random, int count) {
+        final TreeMap<Long, Transaction> transactions = new TreeMap<>();
+        long id = random.nextInt(1000);
+        for (int i = 0; i < count; i++) {
+            id += 1 + random.nextInt(10_000);
+            transactions.put(id, transaction(accountId, 1_700_000_000_000L + id,
+                    REASONS[random.nextInt(REASONS.length)], i % 5 == 0 ? String.valueOf(id + 1) : null));
+        }
+        return transactions;
+    }
+
+    private static void assertTransactionEquals(Transaction expected, Transaction actual) {
+        assertEquals(expected.getAccountIdentifier().toString(), actual.getAccountIdentifier().toString());
+        assertEquals(expected.getAccountIdentifier().isPlayer(), actual.getAccountIdentifier().isPlayer());
+        assertEquals(expected.getActor().toString(), actual.getActor().toString());
+        assertEquals(expected.getCurrencyName(), actual.getCurrencyName());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        assertEquals(expected.getAmount(), actual.getAmount());
+        assertEquals(expected.getRevertedWith(), actual.getRevertedWith());
+        assertEquals(expected.getReason(), actual.getReason());
+    }
+
+    private static void assertTransactionsEqual(TreeMap<Long, Transaction> expected, TreeMap<Long, Transaction> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((id, transaction) -> assertTransactionEquals(transaction, actual.get(id)));
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        final Random random = new Random(42);
+        //Written in random order, so the sorted index differs from the record order
+        final Map<AccountID, TreeMap<Long, Transaction>> accounts = new LinkedHashMap<>();
+        for (int i = 0; i < 200; i++) {
+            final AccountID accountId = new AccountID(new UUID(random.nextLong(), random.nextLong()));
+            accounts.put(accountId, transactions(accountId, random, 1 + random.nextInt(20)));
+        }
+        for (String bank : List.of("bank", "zeta", "a", "bank-€")) {
+            final AccountID accountId = new AccountID(bank);
+            accounts.put(accountId, transactions(accountId, random, 1 + random.nextInt(20)));
+        }
+        final AccountID emptyAccount = new AccountID(new UUID(random.nextLong(), random.nextLong()));
+        accounts.put(emptyAccount, new TreeMap<>());
+
+        final Path archivePath = tempDir.resolve("archive" + IndexedArchiveReader.EXTENSION);
+        final Path reasonsPath = tempDir.resolve("archive" + IndexedArchiveReader.EXTENSION + ".reasons.tmp");
+        try (ArchiveWriter writer = ArchiveWriter.open(archivePath)) {
+            assertInstanceOf(IndexedArchiveWriter.class, writer);
+            for (Map.Entry<AccountID, TreeMap<Long, Transaction>> entry : accounts.entrySet()) {
+                writer.writeAccount(entry.getKey(), entry.getKey().toString(), entry.getValue());
+            }
+            //An account returned twice by SCAN is archived once
+            final AccountID first = accounts.keySet().iterator().next();
+            writer.writeAccount(first, first.toString(), transactions(first, random, 3));
+            writer.flush();
+            assertTrue(Files.exists(reasonsPath));
+        }
+        //The reasons are appended to the archive on close
+        assertFalse(Files.exists(reasonsPath));
+
+        final byte[] archive = Files.readAllBytes(archivePath);
+        final ByteBuffer footer = ByteBuffer.wrap(archive, archive.length - 32, 32);
+        final long reasonsOffset = footer.getLong();
+        final long indexOffset = footer.getLong();
+        final int indexSize = footer.getInt();
+        final long recordCount = footer.getLong();
+        assertEquals(IndexedArchiveReader.MAGIC, footer.getInt());
+        assertEquals(accounts.size(), indexSize);
+        assertEquals(accounts.values().stream().mapToLong(TreeMap::size).sum(), recordCount);
+        assertEquals(recordCount * IndexedArchiveReader.RECORD_SIZE, reasonsOffset);
+        assertEquals(archive.length - 32, indexOffset + (long) indexSize * (Transaction.IDENTIFIER_SIZE + 12));
+
+        try (IndexedArchiveReader reader = new IndexedArchiveReader(archivePath)) {
+            for (Map.Entry<AccountID, TreeMap<Long, Transaction>> entry : accounts.entrySet()) {
+                assertTransactionsEqual(entry.getValue(), reader.getTransactions(entry.getKey()));
+            }
+            assertTrue(reader.getTransactions(emptyAccount).isEmpty());
+            assertTrue(reader.getTransactions(new AccountID(new UUID(random.nextLong(), random.nextLong()))).isEmpty());
+            assertTrue(reader.getTransactions(new AccountID("missing")).isEmpty());
+        }
+    }
+
+    @Test
+    void singleAccount() throws IOException {
+        final AccountID accountId = new AccountID(UUID.randomUUID());
+        final TreeMap<Long, Transaction> transactions = transactions(accountId, new Random(7), 1);
+        final Path archivePath = tempDir.resolve("single" + IndexedArchiveReader.EXTENSION);
+        try (ArchiveWriter writer = ArchiveWriter.open(archivePath)) {
+            writer.writeAccount(accountId, "player", transactions);
+        }
+        try (IndexedArchiveReader reader = new IndexedArchiveReader(archivePath)) {
+            assertTransactionsEqual(transactions, reader.getTransactions(accountId));
+        }
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        final Path archivePath = tempDir.resolve("broken" + IndexedArchiveReader.EXTENSION);
+        try (ArchiveWriter writer = ArchiveWriter.open(archivePath)) {
+            final AccountID accountId = new AccountID("bank");
+            writer.writeAccount(accountId, "bank", transactions(accountId, new Random(1), 5));
+        }
+        final byte[] archive = Files.readAllBytes(archivePath);
+        archive[archive.length - 1] ^= 1;
+        Files.write(archivePath, archive);
+        assertThrows(IOException.class, () -> new IndexedArchiveReader(archivePath));
+
+        final Path shortFile = tempDir.resolve("short" + IndexedArchiveReader.EXTENSION);
+        Files.write(shortFile, new byte[8]);
+        assertThrows(IOException.class, () -> new IndexedArchiveReader(shortFile));
+    }
+}
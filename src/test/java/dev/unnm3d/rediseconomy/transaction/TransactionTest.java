@@ -0,0 +1,83 @@
+package dev.unnm3d.rediseconomy.transaction;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionTest {
+
+    private static Transaction transaction(String reason) {
+        return new Transaction(new AccountID(UUID.randomUUID()), new AccountID("bank"), "vault",
+                1_700_000_000_123L, -42.5, "17", reason);
+    }
+
+    private static void assertTransactionEquals(Transaction expected, Transaction actual) {
+        assertEquals(expected.getAccountIdentifier(), actual.getAccountIdentifier());
+        assertEquals(expected.getActor(), actual.getActor());
+        assertEquals(expected.getCurrencyName(), actual.getCurrencyName());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        assertEquals(expected.getAmount(), actual.getAmount());
+        assertEquals(expected.getRevertedWith(), actual.getRevertedWith());
+        assertEquals(expected.getReason(), actual.getReason());
+    }
+
+    @Test
+    void binaryRoundTrip() {
+        final Transaction transaction = transaction("Payment");
+        final byte[] bytes = transaction.toBytes();
+        assertEquals(1, bytes[0]);
+        assertEquals(1 + Transaction.FIXED_FIELDS_SIZE + 4 + "Payment".length(), bytes.length);
+        assertTransactionEquals(transaction, Transaction.fromBytes(bytes));
+    }
+
+    @Test
+    void emptyReason() {
+        final Transaction transaction = transaction("");
+        final byte[] bytes = transaction.toBytes();
+        assertEquals(1 + Transaction.FIXED_FIELDS_SIZE + 4, bytes.length);
+        assertEquals(0, ByteBuffer.wrap(bytes).getInt(1 + Transaction.FIXED_FIELDS_SIZE));
+        assertTransactionEquals(transaction, Transaction.fromBytes(bytes));
+    }
+
+    @Test
+    void multibyteReason() {
+        final String reason = "Pagato 5€ a Jürgen ✓ 日本";
+        final Transaction transaction = transaction(reason);
+        final byte[] bytes = transaction.toBytes();
+        final int reasonLength = reason.getBytes(StandardCharsets.UTF_8).length;
+        assertEquals(reasonLength, ByteBuffer.wrap(bytes).getInt(1 + Transaction.FIXED_FIELDS_SIZE));
+        assertEquals(1 + Transaction.FIXED_FIELDS_SIZE + 4 + reasonLength, bytes.length);
+        assertTransactionEquals(transaction, Transaction.fromBytes(bytes));
+    }
+
+    @Test
+    void accountsAndRevert() {
+        final Transaction transaction = new Transaction(new AccountID("bank-€"), new AccountID(), "eur",
+                0, Double.MAX_VALUE, null, "Reason");
+        final Transaction decoded = Transaction.fromBytes(transaction.toBytes());
+        assertTransactionEquals(transaction, decoded);
+        assertFalse(decoded.getAccountIdentifier().isPlayer());
+        assertTrue(decoded.getActor().isServer());
+        assertNull(decoded.getRevertedWith());
+    }
+
+    @Test
+    void legacyFormat() {
+        //Legacy transactions are Latin-1 strings saved through the UTF-8 string codec
+        final Transaction player = transaction("Payment");
+        final byte[] playerLegacy = player.toString().getBytes(StandardCharsets.UTF_8);
+        assertNotEquals(1, playerLegacy[0]);
+        assertTransactionEquals(player, Transaction.fromBytes(playerLegacy));
+
+        final Transaction bank = new Transaction(new AccountID("bank"), new AccountID(UUID.randomUUID()), "vault",
+                1_000L, 3.25, null, "");
+        final byte[] bankLegacy = bank.toString().getBytes(StandardCharsets.UTF_8);
+        assertNotEquals(1, bankLegacy[0]);
+        assertTransactionEquals(bank, Transaction.fromBytes(bankLegacy));
+        assertTransactionEquals(bank, Transaction.fromString(bank.toString()));
+    }
+}
@@ -0,0 +1,76 @@
+package dev.unnm3d.rediseconomy.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the balance map with the ConcurrentHashMap it replaced, run with ./gradlew jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UUIDDoubleMapBenchmark {
+    @Param({"1000", "100000"})
+    private int accounts;
+    private UUID[] keys;
+    private UUIDDoubleMap primitiveMap;
+    private ConcurrentHashMap<UUID, Double> boxedMap;
+
+    @Setup
+    public void setup() {
+        keys = new UUID[accounts];
+        primitiveMap = new UUIDDoubleMap();
+        boxedMap = new ConcurrentHashMap<>();
+        for (int i = 0; i < accounts; i++) {
+            keys[i] = UUID.randomUUID();
+            primitiveMap.put(keys[i], i);
+            boxedMap.put(keys[i], (double) i);
+        }
+    }
+
+    private UUID randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(keys.length)];
+    }
+
+    @Benchmark
+    @Threads(4)
+    public double getPrimitive() {
+        return primitiveMap.get(randomKey(), 0);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Double getBoxed() {
+        return boxedMap.getOrDefault(randomKey(), 0d);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public double putPrimitive() {
+        return primitiveMap.put(randomKey(), ThreadLocalRandom.current().nextDouble());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Double putBoxed() {
+        return boxedMap.put(randomKey(), ThreadLocalRandom.current().nextDouble());
+    }
+
+    @Benchmark
+    public void iteratePrimitive(Blackhole blackhole) {
+        primitiveMap.forEach((uuid, balance) -> blackhole.consume(balance));
+    }
+
+    @Benchmark
+    public void iterateBoxed(Blackhole blackhole) {
+        boxedMap.forEach((uuid, balance) -> blackhole.consume(balance));
+    }
+}
@@ -0,0 +1,183 @@
+package dev.unnm3d.rediseconomy.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UUIDDoubleMapTest {
+
+    /**
+     * @param home  The slot of the keys in a new segment table of 16 slots
+     * @param count How many keys
+     * @return Keys of the same segment with the same home slot, so they share a probe chain
+     */
+    private static List<UUID> collidingKeys(int home, int count) {
+        final Random random = new Random(42);
+        final List<UUID> keys = new ArrayList<>(count);
+        int segment = -1;
+        while (keys.size() < count) {
+            final UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            final int hash = UUIDDoubleMap.hash(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            if ((hash & 15) != home) continue;
+            if (segment == -1) segment = hash >>> 28;
+            if (hash >>> 28 == segment) keys.add(uuid);
+        }
+        return keys;
+    }
+
+    @Test
+    void putGetRemove() {
+        final UUIDDoubleMap map = new UUIDDoubleMap();
+        final UUID uuid = UUID.randomUUID();
+        assertFalse(map.containsKey(uuid));
+        assertEquals(-1, map.get(uuid, -1));
+        assertTrue(Double.isNaN(map.put(uuid, 10)));
+        assertEquals(10, map.get(uuid, -1));
+        assertEquals(10, map.put(uuid, 20));
+        assertEquals(20, map.get(uuid, -1));
+        assertEquals(1, map.size());
+
+        assertTrue(map.remove(uuid));
+        assertFalse(map.remove(uuid));
+        assertFalse(map.containsKey(uuid));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void putIfAbsent() {
+        final UUIDDoubleMap map = new UUIDDoubleMap();
+        final UUID uuid = UUID.randomUUID();
+        assertTrue(map.putIfAbsent(uuid, 5));
+        assertFalse(map.putIfAbsent(uuid, 6));
+        assertEquals(5, map.get(uuid, -1));
+    }
+
+    @Test
+    void putIfAbsentWithNaNValue() {
+        final UUIDDoubleMap map = new UUIDDoubleMap();
+        final UUID uuid = UUID.randomUUID();
+        assertTrue(map.putIfAbsent(uuid, Double.NaN));
+        assertFalse(map.putIfAbsent(uuid, 1));
+        assertTrue(Double.isNaN(map.get(uuid, -1)));
+        assertTrue(map.containsKey(uuid));
+        assertEquals(1, map.size());
+        assertTrue(map.asMap().containsKey(uuid));
+        assertTrue(Double.isNaN(map.asMap().get(uuid)));
+    }
+
+    @Test
+    void resizeKeepsEntries() {
+        final UUIDDoubleMap map = new UUIDDoubleMap();
+        final Map<UUID, Double> expected = new HashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            final UUID uuid = UUID.randomUUID();
+            map.put(uuid, i);
+            expected.put(uuid, (double) i);
+        }
+        assertEquals(expected.size(), map.size());
+        expected.forEach((uuid, value) -> assertEquals(value, map.get(uuid, -1)));
+        assertEquals(expected, new HashMap<>(map.asMap()));
+    }
+
+    @Test
+    void backwardShiftKeepsProbeChain() {
+        final UUIDDoubleMap map = new UUIDDoubleMap();
+        final List<UUID> keys = collidingKeys(3, 4);
+        for (int i = 0; i < keys.size(); i++) {
+            map.put(keys.get(i), i);
+        }
+        //Removing the head of the chain shifts the others back
+        assertTrue(map.remove(keys.getFirst()));
+        for (int i = 1; i < keys.size(); i++) {
+            assertEquals(i, map.get(keys.get(i), -1));
+        }
+        //Removing from the middle too
+        assertTrue(map.remove(keys.get(2)));
+        assertEquals(1, map.get(keys.get(1), -1));
+        assertEquals(3, map.get(keys.get(3), -1));
+        assertFalse(map.containsKey(keys.get(2)));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void backwardShiftAcrossTableEnd() {
+        final UUIDDoubleMap map = new UUIDDoubleMap();
+        //The chain starts in the last slot and wraps to the first ones
+        final List<UUID> keys = collidingKeys(15, 3);
+        for (int i = 0; i < keys.size(); i++) {
+            map.put(keys.get(i), i);
+        }
+        assertTrue(map.remove(keys.getFirst()));
+        assertEquals(1, map.get(keys.get(1), -1));
+        assertEquals(2, map.get(keys.get(2), -1));
+        assertTrue(map.remove(keys.get(1)));
+        assertEquals(2, map.get(keys.get(2), -1));
+    }
+
+    @Test
+    void randomOperationsMatchHashMap() {
+        final UUIDDoubleMap map = new UUIDDoubleMap();
+        final Map<UUID, Double> expected = new HashMap<>();
+        final Random random = new Random(7);
+        final UUID[] pool = new UUID[2_000];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = new UUID(random.nextLong(), random.nextLong());
+        }
+        for (int i = 0; i < 200_000; i++) {
+            final UUID uuid = pool[random.nextInt(pool.length)];
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    final double value = random.nextDouble();
+                    final Double previous = expected.put(uuid, value);
+                    final double actual = map.put(uuid, value);
+                    if (previous == null) assertTrue(Double.isNaN(actual));
+                    else assertEquals(previous, actual);
+                }
+                case 1 -> assertEquals(expected.remove(uuid) != null, map.remove(uuid));
+                default -> assertEquals(expected.getOrDefault(uuid, -1d), map.get(uuid, -1));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected, new HashMap<>(map.asMap()));
+    }
+
+    @Test
+    void concurrentWriters() throws Exception {
+        final UUIDDoubleMap map = new UUIDDoubleMap();
+        final int threads = 8;
+        final int perThread = 5_000;
+        final List<List<UUID>> keys = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final List<UUID> threadKeys = new ArrayList<>(perThread);
+            for (int i = 0; i < perThread; i++) threadKeys.add(UUID.randomUUID());
+            keys.add(threadKeys);
+        }
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (List<UUID> threadKeys : keys) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < threadKeys.size(); i++) {
+                        map.put(threadKeys.get(i), i);
+                        assertEquals(i, map.get(threadKeys.get(i), -1));
+                    }
+                    //Every other key is removed while the other threads keep writing
+                    for (int i = 0; i < threadKeys.size(); i += 2) {
+                        assertTrue(map.remove(threadKeys.get(i)));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) future.get();
+        }
+        assertEquals(threads * perThread / 2, map.size());
+        for (List<UUID> threadKeys : keys) {
+            for (int i = 0; i < threadKeys.size(); i++) {
+                assertEquals(i % 2 == 0 ? -1 : i, map.get(threadKeys.get(i), -1));
+            }
+        }
+    }
+}